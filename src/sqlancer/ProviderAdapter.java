@@ -62,8 +62,9 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
                         globalState.getManager().incrementSelectQueryCount();
                     } catch (IgnoreMeException ignored) {
                     } catch (AssertionError e) {
+                        // Without --use-reducer, nothing reduces the reproducer: rethrow to report the bug
                         Reproducer<G> reproducer = oracle.getLastReproducer();
-                        if (reproducer != null) {
+                        if (reproducer != null && globalState.getOptions().useReducer()) {
                             return reproducer;
                         }
                         throw e;
@@ -94,11 +95,11 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
             }
         }
         if (testOracleFactory.size() == 1) {
-            return testOracleFactory.get(0).create(globalState);
+            return createTestOracle(testOracleFactory.get(0), globalState);
         } else {
             return new CompositeTestOracle<>(testOracleFactory.stream().map(o -> {
                 try {
-                    return o.create(globalState);
+                    return createTestOracle(o, globalState);
                 } catch (Exception e1) {
                     throw new AssertionError(e1);
                 }
@@ -106,6 +107,11 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
         }
     }
 
+    // Hook for providers to wrap each oracle, e.g. to collect statistics per oracle
+    protected TestOracle<G> createTestOracle(OracleFactory<G> factory, G globalState) throws Exception {
+        return factory.create(globalState);
+    }
+
     public abstract void generateDatabase(G globalState) throws Exception;
 
     // QPG: entry function
@@ -16,31 +16,31 @@ public final class Randomly {
     private static boolean useCaching = true;
     private static int cacheSize = 100;
 
-    private final List<Long> cachedLongs = new ArrayList<>();
-    private final List<Integer> cachedIntegers = new ArrayList<>();
+    private final PrimitiveCache cachedLongs = new PrimitiveCache();
+    private final PrimitiveCache cachedIntegers = new PrimitiveCache();
     private final List<String> cachedStrings = new ArrayList<>();
-    private final List<Double> cachedDoubles = new ArrayList<>();
+    private final PrimitiveCache cachedDoubles = new PrimitiveCache(); // stores Double.doubleToLongBits()
     private final List<byte[]> cachedBytes = new ArrayList<>();
     private Supplier<String> provider;
 
-    private static final ThreadLocal<Random> THREAD_RANDOM = new ThreadLocal<>();
+    private static final ThreadLocal<ThreadConfinedRandom> THREAD_RANDOM = new ThreadLocal<>();
     private long seed;
 
     private void addToCache(long val) {
-        if (useCaching && cachedLongs.size() < cacheSize && !cachedLongs.contains(val)) {
+        if (useCaching && cachedLongs.size() < cacheSize) {
             cachedLongs.add(val);
         }
     }
 
     private void addToCache(int val) {
-        if (useCaching && cachedIntegers.size() < cacheSize && !cachedIntegers.contains(val)) {
+        if (useCaching && cachedIntegers.size() < cacheSize) {
             cachedIntegers.add(val);
         }
     }
 
     private void addToCache(double val) {
-        if (useCaching && cachedDoubles.size() < cacheSize && !cachedDoubles.contains(val)) {
-            cachedDoubles.add(val);
+        if (useCaching && cachedDoubles.size() < cacheSize) {
+            cachedDoubles.add(Double.doubleToLongBits(val));
         }
     }
 
@@ -50,33 +50,12 @@ public final class Randomly {
         }
     }
 
-    private Long getFromLongCache() {
-        if (!useCaching || cachedLongs.isEmpty()) {
-            return null;
-        } else {
-            return Randomly.fromList(cachedLongs);
-        }
-    }
-
-    private Integer getFromIntegerCache() {
-        if (!useCaching || cachedIntegers.isEmpty()) {
-            return null;
-        } else {
-            return Randomly.fromList(cachedIntegers);
-        }
+    private boolean hasCachedLongs() {
+        return useCaching && !cachedLongs.isEmpty();
     }
 
-    private Double getFromDoubleCache() {
-        if (!useCaching) {
-            return null;
-        }
-        if (Randomly.getBoolean() && !cachedLongs.isEmpty()) {
-            return (double) Randomly.fromList(cachedLongs);
-        } else if (!cachedDoubles.isEmpty()) {
-            return Randomly.fromList(cachedDoubles);
-        } else {
-            return null;
-        }
+    private boolean hasCachedIntegers() {
+        return useCaching && !cachedIntegers.isEmpty();
     }
 
     private String getFromStringCache() {
@@ -84,9 +63,9 @@ public final class Randomly {
             return null;
         }
         if (Randomly.getBoolean() && !cachedLongs.isEmpty()) {
-            return String.valueOf(Randomly.fromList(cachedLongs));
+            return String.valueOf(cachedLongs.getRandom());
         } else if (Randomly.getBoolean() && !cachedDoubles.isEmpty()) {
-            return String.valueOf(Randomly.fromList(cachedDoubles));
+            return String.valueOf(Double.longBitsToDouble(cachedDoubles.getRandom()));
         } else if (Randomly.getBoolean() && !cachedBytes.isEmpty()
                 && stringGenerationStrategy == StringGenerationStrategy.SOPHISTICATED) {
             return new String(Randomly.fromList(cachedBytes));
@@ -169,44 +148,46 @@ public final class Randomly {
         assert nr >= 0;
         List<T> selectedColumns = new ArrayList<>();
         List<T> remainingColumns = new ArrayList<>(columns);
+        ThreadConfinedRandom random = getThreadRandom();
         for (int i = 0; i < nr; i++) {
-            selectedColumns.add(remainingColumns.remove(getNextInt(0, remainingColumns.size())));
+            selectedColumns.add(remainingColumns.remove((int) random.nextBoundedLong(0, remainingColumns.size())));
         }
         return selectedColumns;
     }
 
     public static int smallNumber() {
         // no need to cache for small numbers
-        return (int) (Math.abs(getThreadRandom().get().nextGaussian())) * 2;
+        return (int) (Math.abs(getThreadRandom().nextGaussian())) * 2;
     }
 
     public static boolean getBoolean() {
-        return getThreadRandom().get().nextBoolean();
+        return getThreadRandom().nextBoolean();
     }
 
     public static double getPercentage() {
-        return getThreadRandom().get().nextDouble();
+        return getThreadRandom().nextDouble();
     }
 
-    private static ThreadLocal<Random> getThreadRandom() {
-        if (THREAD_RANDOM.get() == null) {
+    // Only a single ThreadLocal lookup per call; callers that need several values should keep the returned generator
+    // in a local variable instead of calling this method repeatedly.
+    private static ThreadConfinedRandom getThreadRandom() {
+        ThreadConfinedRandom random = THREAD_RANDOM.get();
+        if (random == null) {
             // a static method has been called, before Randomly was instantiated
-            THREAD_RANDOM.set(new Random());
+            random = new ThreadConfinedRandom();
+            THREAD_RANDOM.set(random);
         }
-        return THREAD_RANDOM;
+        return random;
     }
 
     public long getInteger() {
         if (smallBiasProbability()) {
             return Randomly.fromOptions(-1L, Long.MAX_VALUE, Long.MIN_VALUE, 1L, 0L);
         } else {
-            if (cacheProbability()) {
-                Long l = getFromLongCache();
-                if (l != null) {
-                    return l;
-                }
+            if (cacheProbability() && hasCachedLongs()) {
+                return cachedLongs.getRandom();
             }
-            long nextLong = getThreadRandom().get().nextInt();
+            long nextLong = getThreadRandom().nextInt();
             addToCache(nextLong);
             return nextLong;
         }
@@ -258,14 +239,15 @@ public final class Randomly {
                 StringBuilder sb = new StringBuilder();
 
                 int chars = getStringLength(r);
+                ThreadConfinedRandom random = getThreadRandom();
                 for (int i = 0; i < chars; i++) {
-                    if (Randomly.getBooleanWithRatherLowProbability()) {
+                    if (ratherLowProbability(random)) {
                         char val = (char) r.getInteger();
                         if (val != 0) {
                             sb.append(val);
                         }
                     } else {
-                        sb.append(ALPHABET.charAt(getNextInt(0, n)));
+                        sb.append(ALPHABET.charAt((int) random.nextBoundedLong(0, n)));
                     }
                 }
                 while (Randomly.getBooleanWithSmallProbability()) {
@@ -327,8 +309,9 @@ public final class Randomly {
         private static String getStringOfAlphabet(Randomly r, String alphabet) {
             int chars = getStringLength(r);
             StringBuilder sb = new StringBuilder();
+            ThreadConfinedRandom random = getThreadRandom();
             for (int i = 0; i < chars; i++) {
-                sb.append(alphabet.charAt(getNextInt(0, alphabet.length())));
+                sb.append(alphabet.charAt((int) random.nextBoundedLong(0, alphabet.length())));
             }
             return sb.toString();
         }
@@ -348,7 +331,7 @@ public final class Randomly {
     public byte[] getBytes() {
         int size = Randomly.smallNumber();
         byte[] arr = new byte[size];
-        getThreadRandom().get().nextBytes(arr);
+        getThreadRandom().nextBytes(arr);
         return arr;
     }
 
@@ -357,9 +340,9 @@ public final class Randomly {
         if (smallBiasProbability()) {
             return Randomly.fromOptions(-1L, Long.MAX_VALUE, Long.MIN_VALUE, 1L);
         }
-        if (cacheProbability()) {
-            Long l = getFromLongCache();
-            if (l != null && l != 0) {
+        if (cacheProbability() && hasCachedLongs()) {
+            long l = cachedLongs.getRandom();
+            if (l != 0) {
                 return l;
             }
         }
@@ -371,9 +354,9 @@ public final class Randomly {
     }
 
     public long getPositiveInteger() {
-        if (cacheProbability()) {
-            Long value = getFromLongCache();
-            if (value != null && value >= 0) {
+        if (cacheProbability() && hasCachedLongs()) {
+            long value = cachedLongs.getRandom();
+            if (value >= 0) {
                 return value;
             }
         }
@@ -389,9 +372,9 @@ public final class Randomly {
     }
 
     public int getPositiveIntegerInt() {
-        if (cacheProbability()) {
-            Integer value = getFromIntegerCache();
-            if (value != null && value >= 0) {
+        if (cacheProbability() && hasCachedIntegers()) {
+            int value = (int) cachedIntegers.getRandom();
+            if (value >= 0) {
                 return value;
             }
         }
@@ -420,22 +403,27 @@ public final class Randomly {
             return Randomly.fromOptions(0.0, -0.0, Double.MAX_VALUE, -Double.MAX_VALUE, Double.POSITIVE_INFINITY,
                     Double.NEGATIVE_INFINITY);
         } else if (cacheProbability()) {
-            Double d = getFromDoubleCache();
-            if (d != null) {
-                return d;
+            if (Randomly.getBoolean() && !cachedLongs.isEmpty()) {
+                return cachedLongs.getRandom();
+            } else if (!cachedDoubles.isEmpty()) {
+                return Double.longBitsToDouble(cachedDoubles.getRandom());
             }
         }
-        double value = getThreadRandom().get().nextDouble();
+        double value = getThreadRandom().nextDouble();
         addToCache(value);
         return value;
     }
 
     private static boolean smallBiasProbability() {
-        return getThreadRandom().get().nextInt(100) == 1;
+        return getThreadRandom().nextInt(100) == 1;
     }
 
     public static boolean getBooleanWithRatherLowProbability() {
-        return getThreadRandom().get().nextInt(10) == 1;
+        return ratherLowProbability(getThreadRandom());
+    }
+
+    private static boolean ratherLowProbability(ThreadConfinedRandom random) {
+        return random.nextInt(10) == 1;
     }
 
     public static boolean getBooleanWithSmallProbability() {
@@ -469,7 +457,7 @@ public final class Randomly {
     }
 
     public BigDecimal getRandomBigDecimal() {
-        return BigDecimal.valueOf(getThreadRandom().get().nextDouble());
+        return BigDecimal.valueOf(getThreadRandom().nextDouble());
     }
 
     public long getPositiveIntegerNotNull() {
@@ -482,7 +470,7 @@ public final class Randomly {
     }
 
     public static long getNonCachedInteger() {
-        return getThreadRandom().get().nextLong();
+        return getThreadRandom().nextLong();
     }
 
     public static long getPositiveOrZeroNonCachedInteger() {
@@ -498,16 +486,16 @@ public final class Randomly {
     }
 
     public Randomly() {
-        THREAD_RANDOM.set(new Random());
+        THREAD_RANDOM.set(new ThreadConfinedRandom());
     }
 
     public Randomly(long seed) {
         this.seed = seed;
-        THREAD_RANDOM.set(new Random(seed));
+        THREAD_RANDOM.set(new ThreadConfinedRandom(seed));
     }
 
     public static double getUncachedDouble() {
-        return getThreadRandom().get().nextDouble();
+        return getThreadRandom().nextDouble();
     }
 
     public String getChar() {
@@ -538,7 +526,7 @@ public final class Randomly {
         if (lower == upper) {
             return lower;
         }
-        return getThreadRandom().get().longs(lower, upper).findFirst().getAsLong();
+        return getThreadRandom().nextBoundedLong(lower, upper);
     }
 
     private static int getNextInt(int lower, int upper) {
@@ -549,6 +537,138 @@ public final class Randomly {
         return seed;
     }
 
+    /*
+     * A java.util.Random that produces exactly the same sequence as java.util.Random for the same seed (so that
+     * --random-seed keeps reproducing previously reported runs), but without its thread-safety overhead: the 48-bit LCG
+     * state is a plain field instead of an AtomicLong updated by compare-and-set, since each instance is confined to
+     * its thread through THREAD_RANDOM. Bounded longs are drawn directly instead of through Random.longs(), which
+     * allocated a stream on every call.
+     */
+    static final class ThreadConfinedRandom extends Random {
+
+        private static final long serialVersionUID = 1L;
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+
+        // Assigned in setSeed(), which Random's constructor invokes for subclasses
+        private long state;
+
+        ThreadConfinedRandom() {
+            super();
+        }
+
+        ThreadConfinedRandom(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public synchronized void setSeed(long seed) {
+            super.setSeed(seed);
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        @Override
+        protected int next(int bits) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
+
+        // Same algorithm as Random.longs(lower, upper).findFirst()
+        long nextBoundedLong(long lower, long upper) {
+            long r = nextLong();
+            long n = upper - lower;
+            long m = n - 1;
+            if ((n & m) == 0L) {
+                r = (r & m) + lower;
+            } else if (n > 0L) {
+                long u = r >>> 1;
+                r = u % n;
+                while (u + m - r < 0L) {
+                    // reject over-represented candidates
+                    u = nextLong() >>> 1;
+                    r = u % n;
+                }
+                r += lower;
+            } else {
+                while (r < lower || r >= upper) {
+                    r = nextLong();
+                }
+            }
+            return r;
+        }
+    }
+
+    /*
+     * Insertion-ordered set of primitive longs, used as constant cache. Membership is checked with an open-addressing
+     * (linear probing) hash table, and the insertion-ordered array allows picking a random element in O(1), without
+     * boxing.
+     */
+    static final class PrimitiveCache {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] values = new long[INITIAL_CAPACITY];
+        private long[] table = new long[INITIAL_CAPACITY * 2];
+        private boolean[] occupied = new boolean[INITIAL_CAPACITY * 2];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        long getRandom() {
+            return get(getNextInt(0, size));
+        }
+
+        void add(long val) {
+            int mask = table.length - 1;
+            int slot = hash(val) & mask;
+            while (occupied[slot]) {
+                if (table[slot] == val) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == values.length) {
+                grow();
+                add(val);
+                return;
+            }
+            occupied[slot] = true;
+            table[slot] = val;
+            values[size++] = val;
+        }
+
+        private void grow() {
+            values = Arrays.copyOf(values, values.length * 2);
+            table = new long[values.length * 2];
+            occupied = new boolean[values.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(values[i]) & mask;
+                while (occupied[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                occupied[slot] = true;
+                table[slot] = values[i];
+            }
+        }
+
+        private static int hash(long val) {
+            long h = val * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
     public static void initialize(MainOptions options) {
         stringGenerationStrategy = options.getRandomStringGenerationStrategy();
         maxStringLength = options.getMaxStringConstantLength();
@@ -3,6 +3,7 @@ package sqlancer.common.oracle;
 import java.util.List;
 
 import sqlancer.GlobalState;
+import sqlancer.Reproducer;
 
 public class CompositeTestOracle<G extends GlobalState<?, ?, ?>> implements TestOracle<G> {
 
@@ -19,8 +20,9 @@ public class CompositeTestOracle<G extends GlobalState<?, ?, ?>> implements Test
     @Override
     public void check() throws Exception {
         try {
-            oracles.get(i).check();
+            // Also set on failure, so that the failing oracle provides the reproducer
             iLast = i;
+            oracles.get(i).check();
             boolean lastOracleIndex = i == oracles.size() - 1;
             if (!lastOracleIndex) {
                 globalState.getManager().incrementSelectQueryCount();
@@ -34,4 +36,9 @@ public class CompositeTestOracle<G extends GlobalState<?, ?, ?>> implements Test
     public String getLastQueryString() {
         return oracles.get(iLast).getLastQueryString();
     }
+
+    @Override
+    public Reproducer<G> getLastReproducer() {
+        return oracles.get(iLast).getLastReproducer();
+    }
 }
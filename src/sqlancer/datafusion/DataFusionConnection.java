@@ -0,0 +1,227 @@
+package sqlancer.datafusion;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import sqlancer.SQLConnection;
+import sqlancer.datafusion.DataFusionUtil.DataFusionLogger;
+
+/*
+ * JDBC connection to one DataFusion server endpoint
+ *
+ * If the server is supervised (`--spawn-servers`), every statement sent through it is recorded as the in-flight query
+ * of the current thread until it completes (see `DataFusionLogger.setInFlightQuery()`), so if the server crashes the
+ * query that triggered it can be reported. While metrics sampling is on, a fraction of SELECT queries is also kept for `EXPLAIN ANALYZE`
+ * (see `DataFusionMetricsCollector`). Otherwise statements are not intercepted.
+ *
+ * Also owns the optional native Flight client (see `DataFusionFlightClient`), memory-limited connection (see
+ * `DataFusionSpillOracle`) and concurrent connections (see `DataFusionConcurrencyOracle`), all attached to the same
+ * server context.
+ */
+public class DataFusionConnection extends SQLConnection {
+    private final String endpoint;
+    private final boolean recordInFlightQueries;
+    private DataFusionFlightClient flightClient;
+    private DataFusionConnection memoryLimitedConnection;
+    private final List<DataFusionConnection> attachedConnections = new ArrayList<>();
+    // 0 when sampling is off
+    private double metricsSampleRate;
+    private final List<String> sampledQueries = new ArrayList<>();
+
+    public DataFusionConnection(Connection connection, String endpoint, boolean recordInFlightQueries) {
+        super(connection);
+        this.endpoint = endpoint;
+        this.recordInFlightQueries = recordInFlightQueries;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    // Created on first use, by the thread owning this connection
+    public DataFusionFlightClient getFlightClient() throws SQLException {
+        if (flightClient == null) {
+            flightClient = new DataFusionFlightClient(endpoint, DataFusionProvider.getSessionKey(),
+                    recordInFlightQueries);
+        }
+        return flightClient;
+    }
+
+    /*
+     * Connection to a server context sharing the tables of this one, but executing queries with a memory pool of
+     * `memoryLimit` bytes (handshake header 'memory_limit')
+     *
+     * Created on first use, by the thread owning this connection. The limit is fixed per run (`--spill-memory-limit`).
+     */
+    public DataFusionConnection getMemoryLimitedConnection(long memoryLimit) throws SQLException {
+        if (memoryLimitedConnection == null) {
+            Properties headers = new Properties();
+            headers.setProperty("memory_limit", String.valueOf(memoryLimit));
+            memoryLimitedConnection = attach(headers);
+        }
+        return memoryLimitedConnection;
+    }
+
+    // `count` connections to the same server context as this one, created on first use by the thread owning this
+    // connection, and can then be used from other threads
+    public List<DataFusionConnection> getAttachedConnections(int count) throws SQLException {
+        while (attachedConnections.size() < count) {
+            attachedConnections.add(attach(new Properties()));
+        }
+        return attachedConnections.subList(0, count);
+    }
+
+    private DataFusionConnection attach(Properties headers) throws SQLException {
+        headers.setProperty("attach", DataFusionProvider.getSessionKey());
+        return new DataFusionConnection(DataFusionProvider.connect(endpoint, headers), endpoint, recordInFlightQueries);
+    }
+
+    public void setMetricsSampleRate(double metricsSampleRate) {
+        this.metricsSampleRate = metricsSampleRate;
+    }
+
+    // Queries sampled since last call
+    public List<String> takeSampledQueries() {
+        List<String> queries = new ArrayList<>(sampledQueries);
+        sampledQueries.clear();
+        return queries;
+    }
+
+    // Not drawn from `Randomly`, so sampling doesn't change the generated queries of a seed
+    private void sample(String query) {
+        if (metricsSampleRate > 0 && query.trim().toUpperCase(Locale.ROOT).startsWith("SELECT")
+                && ThreadLocalRandom.current().nextDouble() < metricsSampleRate) {
+            sampledQueries.add(query);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (flightClient != null) {
+                flightClient.close();
+            }
+            if (memoryLimitedConnection != null) {
+                memoryLimitedConnection.close();
+            }
+            for (DataFusionConnection connection : attachedConnections) {
+                connection.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    public Statement prepareStatement(String arg) throws SQLException {
+        sample(arg);
+        if (!recordInFlightQueries) {
+            return super.prepareStatement(arg);
+        }
+        // Preparing already plans the query on server side
+        StatementInterceptor interceptor = new StatementInterceptor();
+        interceptor.record(arg);
+        Statement statement;
+        try {
+            statement = super.prepareStatement(arg);
+        } catch (SQLException e) {
+            interceptor.failed = true;
+            throw e;
+        }
+        return interceptor.wrap(statement, PreparedStatement.class);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        Statement statement = super.createStatement();
+        if (!recordInFlightQueries && metricsSampleRate <= 0) {
+            return statement;
+        }
+        return new StatementInterceptor().wrap(statement, Statement.class);
+    }
+
+    /*
+     * Records and samples the query of one statement, and keeps it as the in-flight query of the current thread until
+     * the statement or its result set is closed
+     *
+     * If the statement or its result set failed, the query stays recorded (until the next statement of the thread
+     * replaces it): the failure may be the server crashing, and its supervisor has not reported it yet.
+     */
+    private final class StatementInterceptor {
+        private Statement statementProxy;
+        private String query;
+        private boolean failed;
+
+        // Query text of plain statements is only known at `execute*(String)`
+        private void record(String executedQuery) {
+            if (recordInFlightQueries) {
+                query = executedQuery;
+                DataFusionLogger.setInFlightQuery(endpoint, executedQuery);
+            }
+        }
+
+        private void complete() {
+            if (query != null && !failed) {
+                DataFusionLogger.clearInFlightQuery(endpoint, query);
+            }
+        }
+
+        private Statement wrap(Statement statement, Class<? extends Statement> type) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                if (method.getName().startsWith("execute") && args != null && args.length > 0
+                        && args[0] instanceof String) {
+                    record((String) args[0]);
+                    sample((String) args[0]);
+                }
+                Object result = invoke(statement, method, args);
+                if (result instanceof ResultSet && recordInFlightQueries) {
+                    return wrap((ResultSet) result);
+                }
+                if ("close".equals(method.getName())) {
+                    complete();
+                }
+                return result;
+            };
+            statementProxy = (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                    handler);
+            return statementProxy;
+        }
+
+        private ResultSet wrap(ResultSet resultSet) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                // Closing the statement of a result set has to go through the statement proxy
+                if ("getStatement".equals(method.getName())) {
+                    return statementProxy;
+                }
+                Object result = invoke(resultSet, method, args);
+                if ("close".equals(method.getName())) {
+                    complete();
+                }
+                return result;
+            };
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, handler);
+        }
+
+        private Object invoke(Object target, Method method, Object... args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                failed = true;
+                throw e.getCause();
+            }
+        }
+    }
+}
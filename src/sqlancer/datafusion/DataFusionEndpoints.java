@@ -0,0 +1,151 @@
+package sqlancer.datafusion;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * DataFusion server endpoints shared by all SQLancer threads
+ *
+ * Two modes (see `DataFusionOptions`):
+ * 1. `--endpoints host:port,...`: connect to already running servers
+ * 2. `--spawn-servers N`: launch N local `datafusion-server` processes on consecutive ports, each one restarted by
+ * its `DataFusionServerSupervisor` if it crashes
+ *
+ * Each thread is assigned an endpoint round-robin on its first database, and keeps using it as long as it's healthy.
+ * Health check is a TCP connect to the endpoint (JDBC handshake will report the detailed error if server is
+ * reachable but broken).
+ */
+public final class DataFusionEndpoints {
+    private static final int HEALTH_CHECK_TIMEOUT_MS = 1000;
+
+    private static DataFusionEndpoints instance;
+
+    private final List<String> endpoints;
+    // Same order as `endpoints`, empty if servers are not spawned by SQLancer
+    private final List<DataFusionServerSupervisor> supervisors = new ArrayList<>();
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+    // session key of a worker thread -> index in `endpoints`
+    private final Map<String, Integer> assignments = new ConcurrentHashMap<>();
+
+    private DataFusionEndpoints(List<String> endpoints) {
+        this.endpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    // Options are the same for all threads, the first caller sets up the endpoints
+    public static synchronized DataFusionEndpoints getInstance(DataFusionOptions options) throws SQLException {
+        if (instance == null) {
+            instance = options.spawnServers > 0 ? spawn(options) : connect(options);
+        }
+        return instance;
+    }
+
+    private static DataFusionEndpoints connect(DataFusionOptions options) throws SQLException {
+        List<String> endpoints = new ArrayList<>();
+        for (String endpoint : options.endpoints.split(",")) {
+            if (!endpoint.isBlank()) {
+                endpoints.add(endpoint.trim());
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new SQLException("No DataFusion server endpoint specified in --endpoints");
+        }
+        for (String endpoint : endpoints) {
+            if (!isHealthy(endpoint)) {
+                System.err.println("DataFusion server at " + endpoint + " is not reachable");
+            }
+        }
+
+        return new DataFusionEndpoints(endpoints);
+    }
+
+    private static DataFusionEndpoints spawn(DataFusionOptions options) throws SQLException {
+        File logDir = new File("logs/datafusion_custom_log/");
+        if (!logDir.exists() && !logDir.mkdirs()) {
+            throw new SQLException("Failed to create 'datafusion_custom_log' directory");
+        }
+
+        List<String> endpoints = new ArrayList<>();
+        DataFusionEndpoints result = new DataFusionEndpoints(endpoints);
+        Runtime.getRuntime().addShutdownHook(new Thread(result::stopSpawnedServers));
+
+        for (int i = 0; i < options.spawnServers; i++) {
+            DataFusionServerSupervisor supervisor = new DataFusionServerSupervisor(options.serverBinary,
+                    options.spawnBasePort + i, logDir);
+            supervisor.start();
+            result.supervisors.add(supervisor);
+            endpoints.add(supervisor.getEndpoint());
+        }
+
+        for (DataFusionServerSupervisor supervisor : result.supervisors) {
+            supervisor.awaitStartup();
+            supervisor.startWatchdog();
+        }
+
+        return result;
+    }
+
+    private void stopSpawnedServers() {
+        for (DataFusionServerSupervisor supervisor : supervisors) {
+            supervisor.stop();
+        }
+    }
+
+    public static boolean isHealthy(String endpoint) {
+        int sep = endpoint.lastIndexOf(':');
+        if (sep <= 0) {
+            return false;
+        }
+        try (Socket socket = new Socket()) {
+            int port = Integer.parseInt(endpoint.substring(sep + 1));
+            socket.connect(new InetSocketAddress(endpoint.substring(0, sep), port), HEALTH_CHECK_TIMEOUT_MS);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Endpoint (host:port) for the current thread
+    public String getEndpoint() throws SQLException {
+        // Not the thread name, which changes with the database of each try
+        String thread = DataFusionProvider.getSessionKey();
+        Integer assigned = assignments.get(thread);
+        if (assigned != null && !supervisors.isEmpty()) {
+            // Spawned servers come back after crash, wait for it instead of reassigning
+            supervisors.get(assigned).awaitRunning();
+            return endpoints.get(assigned);
+        }
+        if (assigned != null && isHealthy(endpoints.get(assigned))) {
+            return endpoints.get(assigned);
+        }
+
+        // First database of this thread, or its server went away: move on to the next healthy one
+        for (int i = 0; i < endpoints.size(); i++) {
+            int candidate = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+            if (isHealthy(endpoints.get(candidate))) {
+                assignments.put(thread, candidate);
+                return endpoints.get(candidate);
+            }
+        }
+
+        throw new SQLException("No healthy DataFusion server in " + endpoints);
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    // Restart count of the server at `endpoint`, always 0 for servers not spawned by SQLancer
+    public int getGeneration(String endpoint) {
+        int index = endpoints.indexOf(endpoint);
+        return index < 0 || supervisors.isEmpty() ? 0 : supervisors.get(index).getGeneration();
+    }
+}
@@ -0,0 +1,555 @@
+package sqlancer.datafusion;
+
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import sqlancer.common.ast.newast.ColumnReferenceNode;
+import sqlancer.common.ast.newast.NewBinaryOperatorNode;
+import sqlancer.common.ast.newast.NewFunctionNode;
+import sqlancer.common.ast.newast.NewUnaryPostfixOperatorNode;
+import sqlancer.common.ast.newast.NewUnaryPrefixOperatorNode;
+import sqlancer.common.ast.newast.Node;
+import sqlancer.datafusion.DataFusionSchema.DataFusionColumn;
+import sqlancer.datafusion.DataFusionSchema.DataFusionDataType;
+import sqlancer.datafusion.ast.DataFusionConstant;
+import sqlancer.datafusion.ast.DataFusionSpecialExpr.CastToStringView;
+import sqlancer.datafusion.gen.DataFusionBaseExpr;
+import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprCategory;
+import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
+
+/*
+ * Evaluates a non-aggregate expression on one row in Java (like `getExpectedValue()` on SQLite3's AST), e.g. to find
+ * which of `p`, `NOT p` and `p IS NULL` selects the pivot row in PQS without asking the server.
+ *
+ * Values: NULL -> `null`, BIGINT -> `Long`, DOUBLE -> `Double`, BOOLEAN -> `Boolean`, STRING -> `String`
+ *
+ * Semantics follow DataFusion:
+ * - NULL: operators and functions return NULL if any argument is NULL, except `AND`/`OR` (three-valued logic),
+ * `IS [NOT] NULL`, `IS [NOT] DISTINCT FROM` and the conditional functions (`coalesce()`, `nullif()`, ...)
+ * - NaN and -0.0: DOUBLEs are compared with the IEEE 754 total order like Arrow kernels, i.e. `NaN = NaN`, NaN is
+ * larger than +Inf, and -0.0 < +0.0. Arithmetic is plain IEEE 754.
+ * - Overflow: DataFusion wraps BIGINT overflow when executing a plan, but errors when the same expression is
+ * constant-folded, so overflowing expressions are not evaluated. Same for division and modulo by zero.
+ * - Coercion: BIGINT and DOUBLE operands are both coerced to DOUBLE. Other mixed types are not evaluated.
+ *
+ * Everything else (regex, casts, most scalar functions, `LIKE` with escapes, ...) throws `CannotEvaluateException`,
+ * callers are expected to fall back to evaluating the expression on server side.
+ */
+public class DataFusionExpressionEvaluator {
+    // "<category> <name>" -> operator, ambiguous names are left out
+    private static final Map<String, DataFusionBaseExprType> OPERATORS = new HashMap<>();
+    private static final Map<DataFusionBaseExpr, DataFusionBaseExprType> FUNCTIONS = new IdentityHashMap<>();
+
+    static {
+        Set<String> ambiguous = new HashSet<>();
+        for (DataFusionBaseExprType type : DataFusionBaseExprType.values()) {
+            DataFusionBaseExpr expr = getExpr(type);
+            if (expr.exprType == DataFusionBaseExprCategory.FUNC) {
+                FUNCTIONS.put(expr, type);
+            } else if (OPERATORS.put(expr.exprType + " " + expr.name, type) != null) {
+                ambiguous.add(expr.exprType + " " + expr.name);
+            }
+        }
+        OPERATORS.keySet().removeAll(ambiguous);
+    }
+
+    private final Map<DataFusionColumn, Object> row;
+
+    public DataFusionExpressionEvaluator(Map<DataFusionColumn, Object> row) {
+        this.row = row;
+    }
+
+    // Row with values fetched as strings, `values.get(i)` is the value of `columns.get(i)`
+    public static DataFusionExpressionEvaluator ofRow(List<DataFusionColumn> columns, List<String> values) {
+        if (columns.size() != values.size()) {
+            throw new CannotEvaluateException("Expected " + columns.size() + " values, got " + values.size());
+        }
+        Map<DataFusionColumn, Object> row = new IdentityHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            row.put(columns.get(i), parseValue(values.get(i), columns.get(i).getType()));
+        }
+        return new DataFusionExpressionEvaluator(row);
+    }
+
+    // Which of `p`, `NOT p` and `p IS NULL` is true on the row: 0, 1 or 2 respectively
+    public int getTruePredicateVariant(Node<?> predicate) {
+        Object value = evaluate(predicate);
+        if (value == null) {
+            return 2;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 0 : 1;
+        }
+        throw new CannotEvaluateException("Not a predicate: " + value);
+    }
+
+    public static class CannotEvaluateException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CannotEvaluateException(String message) {
+            super(message);
+        }
+    }
+
+    // Parse a value fetched as string, both Arrow's (`inf`) and Java's (`Infinity`) formatting are accepted
+    public static Object parseValue(String value, DataFusionDataType type) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            switch (type) {
+            case BIGINT:
+                return Long.parseLong(value);
+            case DOUBLE:
+                switch (value.toLowerCase(Locale.ROOT)) {
+                case "inf":
+                case "+inf":
+                case "infinity":
+                    return Double.POSITIVE_INFINITY;
+                case "-inf":
+                case "-infinity":
+                    return Double.NEGATIVE_INFINITY;
+                default:
+                    return Double.parseDouble(value);
+                }
+            case BOOLEAN:
+                if ("true".equals(value) || "false".equals(value)) {
+                    return Boolean.parseBoolean(value);
+                }
+                throw new CannotEvaluateException("Invalid boolean: " + value);
+            case STRING:
+                return value;
+            default:
+                throw new CannotEvaluateException("Unsupported type: " + type);
+            }
+        } catch (NumberFormatException e) {
+            throw new CannotEvaluateException("Invalid " + type + ": " + value);
+        }
+    }
+
+    public Object evaluate(Node<?> expr) {
+        if (expr instanceof DataFusionConstant) {
+            return evaluateConstant((DataFusionConstant) expr);
+        } else if (expr instanceof ColumnReferenceNode) {
+            Object column = ((ColumnReferenceNode<?, ?>) expr).getColumn();
+            if (!row.containsKey(column)) {
+                throw new CannotEvaluateException("Column not in row: " + column);
+            }
+            return row.get(column);
+        } else if (expr instanceof CastToStringView) {
+            return evaluate(((CastToStringView) expr).expr);
+        } else if (expr instanceof NewUnaryPrefixOperatorNode) {
+            NewUnaryPrefixOperatorNode<?> node = (NewUnaryPrefixOperatorNode<?>) expr;
+            return evaluateUnary(getOperator(DataFusionBaseExprCategory.UNARY_PREFIX, node.getOperatorRepresentation()),
+                    evaluate(node.getExpr()));
+        } else if (expr instanceof NewUnaryPostfixOperatorNode) {
+            NewUnaryPostfixOperatorNode<?> node = (NewUnaryPostfixOperatorNode<?>) expr;
+            return evaluateUnary(
+                    getOperator(DataFusionBaseExprCategory.UNARY_POSTFIX, node.getOperatorRepresentation()),
+                    evaluate(node.getExpr()));
+        } else if (expr instanceof NewBinaryOperatorNode) {
+            NewBinaryOperatorNode<?> node = (NewBinaryOperatorNode<?>) expr;
+            return evaluateBinary(getOperator(DataFusionBaseExprCategory.BINARY, node.getOperatorRepresentation()),
+                    evaluate(node.getLeft()), evaluate(node.getRight()));
+        } else if (expr instanceof NewFunctionNode) {
+            NewFunctionNode<?, ?> node = (NewFunctionNode<?, ?>) expr;
+            DataFusionBaseExprType function = FUNCTIONS.get(node.getFunc());
+            if (function == null) {
+                throw new CannotEvaluateException("Unsupported function: " + node.getFunc());
+            }
+            List<Object> args = new ArrayList<>();
+            for (Node<?> arg : node.getArgs()) {
+                args.add(evaluate(arg));
+            }
+            return evaluateFunction(function, args);
+        }
+        throw new CannotEvaluateException("Unsupported expression: " + expr.getClass().getSimpleName());
+    }
+
+    private static DataFusionBaseExprType getOperator(DataFusionBaseExprCategory category, String name) {
+        DataFusionBaseExprType operator = OPERATORS.get(category + " " + name);
+        if (operator == null) {
+            throw new CannotEvaluateException("Unsupported operator: " + name);
+        }
+        return operator;
+    }
+
+    private static Object evaluateConstant(DataFusionConstant constant) {
+        if (constant instanceof DataFusionConstant.DataFusionNullConstant) {
+            return null;
+        } else if (constant instanceof DataFusionConstant.DataFusionIntConstant) {
+            long value = ((DataFusionConstant.DataFusionIntConstant) constant).getValue();
+            // `-9223372036854775808` is planned as negated 9223372036854775808, which doesn't fit in BIGINT
+            if (value == Long.MIN_VALUE) {
+                throw new CannotEvaluateException("BIGINT literal out of range");
+            }
+            return value;
+        } else if (constant instanceof DataFusionConstant.DataFusionBooleanConstant) {
+            return ((DataFusionConstant.DataFusionBooleanConstant) constant).getValue();
+        } else if (constant instanceof DataFusionConstant.DataFusionStringConstant) {
+            return ((DataFusionConstant.DataFusionStringConstant) constant).getValue().replace("''", "'");
+        } else if (constant instanceof DataFusionConstant.DataFusionDoubleConstant) {
+            switch (constant.toString()) {
+            case "'NaN'::Double":
+                return Double.NaN;
+            case "'+Inf'::Double":
+                return Double.POSITIVE_INFINITY;
+            case "'-Inf'::Double":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return parseValue(constant.toString(), DataFusionDataType.DOUBLE);
+            }
+        }
+        throw new CannotEvaluateException("Unsupported constant: " + constant);
+    }
+
+    private static Object evaluateUnary(DataFusionBaseExprType operator, Object value) {
+        switch (operator) {
+        case IS_NULL:
+            return value == null;
+        case IS_NOT_NULL:
+            return value != null;
+        case NOT:
+            checkArgs(operator, value, Boolean.class);
+            return value == null ? null : !(Boolean) value;
+        case PLUS:
+            checkArgs(operator, value, Long.class, Double.class);
+            return value;
+        case MINUS:
+            checkArgs(operator, value, Long.class, Double.class);
+            if (value instanceof Long) {
+                return negateExact((Long) value);
+            }
+            return value == null ? null : -(Double) value;
+        default:
+            throw new CannotEvaluateException("Unsupported operator: " + operator);
+        }
+    }
+
+    private static Object evaluateBinary(DataFusionBaseExprType operator, Object left, Object right) {
+        switch (operator) {
+        case AND:
+            checkArgs(operator, left, Boolean.class);
+            checkArgs(operator, right, Boolean.class);
+            if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right)) {
+                return false;
+            }
+            return left == null || right == null ? null : true;
+        case OR:
+            checkArgs(operator, left, Boolean.class);
+            checkArgs(operator, right, Boolean.class);
+            if (Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right)) {
+                return true;
+            }
+            return left == null || right == null ? null : false;
+        case IS_DISTINCT_FROM:
+            return !isNotDistinct(left, right);
+        case IS_NOT_DISTINCT_FROM:
+            return isNotDistinct(left, right);
+        default:
+            break;
+        }
+
+        List<Class<?>> argTypes = getArgTypes(operator);
+        checkArgs(operator, left, argTypes.toArray(new Class<?>[0]));
+        checkArgs(operator, right, argTypes.toArray(new Class<?>[0]));
+        if (left == null || right == null) {
+            return null;
+        }
+        switch (operator) {
+        case EQUAL:
+        case EQUAL2:
+            return compare(left, right) == 0;
+        case NOT_EQUAL:
+            return compare(left, right) != 0;
+        case LESS_THAN:
+            return compare(left, right) < 0;
+        case LESS_THAN_OR_EQUAL_TO:
+            return compare(left, right) <= 0;
+        case GREATER_THAN:
+            return compare(left, right) > 0;
+        case GREATER_THAN_OR_EQUAL_TO:
+            return compare(left, right) >= 0;
+        case ADD:
+        case SUB:
+        case MULTIPLICATION:
+        case DIVISION:
+        case MODULO:
+            return arithmetic(operator, left, right);
+        case BITWISE_AND:
+            return (Long) left & (Long) right;
+        case BITWISE_OR:
+            return (Long) left | (Long) right;
+        case BITWISE_XOR:
+            return (Long) left ^ (Long) right;
+        case STRING_CONCATENATION:
+            return (String) left + right;
+        case LIKE:
+        case LIKE_MATCH:
+            return like((String) left, (String) right, false);
+        case NOT_LIKE:
+        case NOT_LIKE_MATCH:
+            return !like((String) left, (String) right, false);
+        case ILIKE:
+        case CASE_INSENSITIVE_LIKE_MATCH:
+            return like((String) left, (String) right, true);
+        case NOT_ILIKE:
+        case NOT_CASE_INSENSITIVE_LIKE_MATCH:
+            return !like((String) left, (String) right, true);
+        default:
+            throw new CannotEvaluateException("Unsupported operator: " + operator);
+        }
+    }
+
+    // Argument types of operators which return NULL on NULL input
+    private static List<Class<?>> getArgTypes(DataFusionBaseExprType operator) {
+        switch (operator) {
+        case EQUAL:
+        case EQUAL2:
+        case NOT_EQUAL:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQUAL_TO:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQUAL_TO:
+            return Arrays.asList(Long.class, Double.class, Boolean.class, String.class);
+        case ADD:
+        case SUB:
+        case MULTIPLICATION:
+        case DIVISION:
+        case MODULO:
+            return Arrays.asList(Long.class, Double.class);
+        case BITWISE_AND:
+        case BITWISE_OR:
+        case BITWISE_XOR:
+            return Arrays.asList(Long.class);
+        default:
+            return Arrays.asList(String.class);
+        }
+    }
+
+    private static Object evaluateFunction(DataFusionBaseExprType function, List<Object> args) {
+        switch (function) {
+        case FUNC_COALESCE:
+        case FUNC_NVL:
+        case FUNC_IFNULL:
+            if (args.isEmpty() || function != DataFusionBaseExprType.FUNC_COALESCE && args.size() != 2) {
+                throw new CannotEvaluateException("Wrong number of arguments: " + function);
+            }
+            for (Object arg : coerce(args)) {
+                if (arg != null) {
+                    return arg;
+                }
+            }
+            return null;
+        case FUNC_NULLIF:
+            checkArgCount(function, args, 2);
+            List<Object> coerced = coerce(args);
+            if (coerced.get(0) == null || coerced.get(1) == null) {
+                return coerced.get(0);
+            }
+            return compare(coerced.get(0), coerced.get(1)) == 0 ? null : coerced.get(0);
+        case FUNC_NVL2:
+            checkArgCount(function, args, 3);
+            List<Object> results = coerce(args.subList(1, 3));
+            return args.get(0) != null ? results.get(0) : results.get(1);
+        case FUNC_ABS:
+            checkArgCount(function, args, 1);
+            checkArgs(function, args.get(0), Long.class, Double.class);
+            if (args.get(0) instanceof Long) {
+                long value = (Long) args.get(0);
+                return value < 0 ? negateExact(value) : value;
+            }
+            return args.get(0) == null ? null : Math.abs((Double) args.get(0));
+        case FUNC_ISNAN:
+            checkArgCount(function, args, 1);
+            checkArgs(function, args.get(0), Double.class);
+            return args.get(0) == null ? null : ((Double) args.get(0)).isNaN();
+        case FUNC_ISZERO:
+            checkArgCount(function, args, 1);
+            checkArgs(function, args.get(0), Double.class);
+            return args.get(0) == null ? null : (Double) args.get(0) == 0.0;
+        case FUNC_STARTS_WITH:
+        case FUNC_ENDS_WITH:
+            checkArgCount(function, args, 2);
+            checkArgs(function, args.get(0), String.class);
+            checkArgs(function, args.get(1), String.class);
+            if (args.get(0) == null || args.get(1) == null) {
+                return null;
+            }
+            String str = (String) args.get(0);
+            return function == DataFusionBaseExprType.FUNC_STARTS_WITH ? str.startsWith((String) args.get(1))
+                    : str.endsWith((String) args.get(1));
+        case FUNC_LOWER:
+        case FUNC_UPPER:
+            checkArgCount(function, args, 1);
+            checkArgs(function, args.get(0), String.class);
+            if (args.get(0) == null) {
+                return null;
+            }
+            // Unicode case mappings of Rust and Java can differ
+            checkAscii((String) args.get(0));
+            return function == DataFusionBaseExprType.FUNC_LOWER ? ((String) args.get(0)).toLowerCase(Locale.ROOT)
+                    : ((String) args.get(0)).toUpperCase(Locale.ROOT);
+        default:
+            throw new CannotEvaluateException("Unsupported function: " + function);
+        }
+    }
+
+    private static void checkArgCount(DataFusionBaseExprType function, List<Object> args, int expected) {
+        if (args.size() != expected) {
+            throw new CannotEvaluateException("Wrong number of arguments: " + function);
+        }
+    }
+
+    // NULL is accepted for any type
+    private static void checkArgs(DataFusionBaseExprType operator, Object value, Class<?>... types) {
+        if (value == null) {
+            return;
+        }
+        for (Class<?> type : types) {
+            if (type.isInstance(value)) {
+                return;
+            }
+        }
+        throw new CannotEvaluateException("Unsupported argument type of " + operator + ": " + value.getClass());
+    }
+
+    // Coerce arguments to a common type: all BIGINT/DOUBLE -> DOUBLE if any is DOUBLE, otherwise all the same type
+    private static List<Object> coerce(List<Object> args) {
+        Set<Class<?>> types = new HashSet<>();
+        for (Object arg : args) {
+            if (arg != null) {
+                types.add(arg.getClass());
+            }
+        }
+        // The type of a NULL value is unknown: if it's a DOUBLE (e.g. a column), DataFusion returns a DOUBLE
+        if (types.equals(Set.of(Long.class)) && args.contains(null)) {
+            throw new CannotEvaluateException("BIGINT arguments with a NULL of unknown type");
+        }
+        if (types.size() <= 1) {
+            return args;
+        }
+        if (!types.equals(Set.of(Long.class, Double.class))) {
+            throw new CannotEvaluateException("Arguments of different types: " + types);
+        }
+        List<Object> coerced = new ArrayList<>();
+        for (Object arg : args) {
+            coerced.add(arg == null ? null : ((Number) arg).doubleValue());
+        }
+        return coerced;
+    }
+
+    private static boolean isNotDistinct(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == null && right == null;
+        }
+        return compare(left, right) == 0;
+    }
+
+    private static int compare(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        } else if (left instanceof Number && right instanceof Number) {
+            // Total order: NaN = NaN, -0.0 < +0.0
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        } else if (left instanceof String && right instanceof String) {
+            // Byte order of UTF-8 is code point order
+            return Arrays.compare(((String) left).codePoints().toArray(), ((String) right).codePoints().toArray());
+        } else if (left instanceof Boolean && right instanceof Boolean) {
+            return Boolean.compare((Boolean) left, (Boolean) right);
+        }
+        throw new CannotEvaluateException("Can't compare " + left.getClass() + " with " + right.getClass());
+    }
+
+    private static Object arithmetic(DataFusionBaseExprType operator, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            long l = (Long) left;
+            long r = (Long) right;
+            try {
+                switch (operator) {
+                case ADD:
+                    return Math.addExact(l, r);
+                case SUB:
+                    return Math.subtractExact(l, r);
+                case MULTIPLICATION:
+                    return Math.multiplyExact(l, r);
+                default:
+                    break;
+                }
+            } catch (ArithmeticException e) {
+                throw new CannotEvaluateException("BIGINT overflow: " + l + " " + operator + " " + r);
+            }
+            if (r == 0 || l == Long.MIN_VALUE && r == -1) {
+                throw new CannotEvaluateException("Division error: " + l + " " + operator + " " + r);
+            }
+            return operator == DataFusionBaseExprType.DIVISION ? l / r : l % r;
+        }
+
+        double l = ((Number) left).doubleValue();
+        double r = ((Number) right).doubleValue();
+        switch (operator) {
+        case ADD:
+            return l + r;
+        case SUB:
+            return l - r;
+        case MULTIPLICATION:
+            return l * r;
+        default:
+            if (r == 0.0) {
+                throw new CannotEvaluateException("Division by zero: " + l + " " + operator + " " + r);
+            }
+            return operator == DataFusionBaseExprType.DIVISION ? l / r : l % r;
+        }
+    }
+
+    private static long negateExact(long value) {
+        if (value == Long.MIN_VALUE) {
+            throw new CannotEvaluateException("BIGINT overflow: -" + value);
+        }
+        return -value;
+    }
+
+    // `%` matches any sequence and `_` any single character, patterns with escapes are not evaluated
+    private static boolean like(String str, String pattern, boolean caseInsensitive) {
+        if (pattern.indexOf('\\') >= 0) {
+            throw new CannotEvaluateException("LIKE pattern with escape: " + pattern);
+        }
+        if (caseInsensitive) {
+            checkAscii(str);
+            checkAscii(pattern);
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        pattern.codePoints().forEach(c -> {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.appendCodePoint(c);
+            }
+        });
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        int flags = Pattern.DOTALL | (caseInsensitive ? Pattern.CASE_INSENSITIVE : 0);
+        return Pattern.compile(regex.toString(), flags).matcher(str).matches();
+    }
+
+    private static void checkAscii(String str) {
+        if (!str.chars().allMatch(c -> c < 128)) {
+            throw new CannotEvaluateException("Non-ASCII string: " + str);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package sqlancer.datafusion;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.Action;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.CallOption;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.CallOptions;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightCallHeaders;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightEndpoint;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightInfo;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightRuntimeException;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.HeaderCallOption;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.Location;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.Result;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.auth2.ClientBearerHeaderHandler;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.auth2.ClientIncomingAuthHeaderMiddleware;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.grpc.CredentialCallOption;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.sql.FlightSqlClient;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.flight.sql.FlightSqlClient.PreparedStatement;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.FloatingPointVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+
+import sqlancer.datafusion.DataFusionUtil.DataFusionLogger;
+
+/*
+ * Native Arrow Flight SQL client, enabled by `--native-flight-client`
+ *
+ * JDBC converts every cell into `String` before oracles can compare results. This client instead receives
+ * `VectorSchemaRoot` batches and reduces each row to a 64-bit hash, computed column by column over the Arrow vectors,
+ * so comparing two results is comparing two `long[]`.
+ *
+ * It attaches to the server context of the JDBC connection of current thread (handshake header 'attach'), so it
+ * sees the same tables.
+ *
+ * Only the Arrow classes shaded into flight-sql-jdbc-driver are on the classpath, so they are used from the shaded
+ * package.
+ */
+public class DataFusionFlightClient implements AutoCloseable {
+    private static final long ROW_HASH_SEED = 17;
+    private static final long ROW_HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    // Outside of the `int` range of value hashes, so NULL never hashes like a value (e.g. 0 or 0.0)
+    private static final long NULL_HASH = 0x5BD1E9955BD1E995L;
+    private static final String QUERY_METRICS_ACTION = "query_metrics";
+    // Fields of the flat JSON object returned by `QUERY_METRICS_ACTION`, all non-negative integers
+    private static final Pattern METRICS_FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(\\d+)");
+
+    private final String endpoint;
+    private final BufferAllocator allocator;
+    private final FlightClient client;
+    private final FlightSqlClient sqlClient;
+    private final CredentialCallOption token;
+    // Same as the JDBC connection it's attached to (see `DataFusionConnection`)
+    private final boolean recordInFlightQueries;
+
+    public DataFusionFlightClient(String endpoint, String session, boolean recordInFlightQueries) throws SQLException {
+        this.endpoint = endpoint;
+        this.recordInFlightQueries = recordInFlightQueries;
+        int sep = endpoint.lastIndexOf(':');
+        Location location = Location.forGrpcInsecure(endpoint.substring(0, sep),
+                Integer.parseInt(endpoint.substring(sep + 1)));
+        ClientIncomingAuthHeaderMiddleware.Factory authFactory = new ClientIncomingAuthHeaderMiddleware.Factory(
+                new ClientBearerHeaderHandler());
+        allocator = new RootAllocator();
+        client = FlightClient.builder(allocator, location).intercept(authFactory).build();
+        sqlClient = new FlightSqlClient(client);
+        try {
+            FlightCallHeaders headers = new FlightCallHeaders();
+            headers.insert("attach", session);
+            client.handshake(new HeaderCallOption(headers));
+        } catch (FlightRuntimeException e) {
+            close();
+            throw new SQLException("Failed to connect native Flight client to " + endpoint, e);
+        }
+        token = authFactory.getCredentialCallOption();
+    }
+
+    /*
+     * Run `query` and return the hash of each row (in result order)
+     *
+     * Server side errors are rethrown as `SQLException` with the server's message, so they can be matched against
+     * expected errors like JDBC ones.
+     */
+    public long[] getRowHashes(String query) throws SQLException {
+        return getRowHashes(query, 0);
+    }
+
+    /*
+     * Same as `getRowHashes(query)`, but cancelled if it doesn't finish within `timeoutMs` (0 for no timeout), and
+     * `SQLTimeoutException` is thrown
+     *
+     * Cancellation is a gRPC deadline on each Flight call: the server drops the call, and with it the execution of the
+     * query.
+     */
+    public long[] getRowHashes(String query, long timeoutMs) throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long[] hashes = new long[0];
+        int rowCount = 0;
+        if (recordInFlightQueries) {
+            DataFusionLogger.setInFlightQuery(endpoint, query);
+        }
+        try (PreparedStatement statement = sqlClient.prepare(query, callOptions(timeoutMs, deadline))) {
+            FlightInfo info = statement.execute(callOptions(timeoutMs, deadline));
+            for (FlightEndpoint resultEndpoint : info.getEndpoints()) {
+                try (FlightStream stream = client.getStream(resultEndpoint.getTicket(),
+                        callOptions(timeoutMs, deadline))) {
+                    while (stream.next()) {
+                        VectorSchemaRoot batch = stream.getRoot();
+                        if (rowCount + batch.getRowCount() > hashes.length) {
+                            hashes = Arrays.copyOf(hashes, Math.max(rowCount + batch.getRowCount(), hashes.length * 2));
+                        }
+                        hashRows(batch, stream.getDictionaryProvider(), hashes, rowCount);
+                        rowCount += batch.getRowCount();
+                    }
+                }
+            }
+        } catch (FlightRuntimeException e) {
+            if (e.status().code() == FlightStatusCode.TIMED_OUT) {
+                throw new SQLTimeoutException("Query cancelled after " + timeoutMs + "ms: " + query, e);
+            }
+            throw new SQLException(e.getMessage(), e);
+        } catch (Exception e) {
+            // `FlightStream.close()` declares `Exception`
+            throw new SQLException("Failed to fetch result of '" + query + "': " + e.getMessage(), e);
+        }
+
+        // Kept on failure, which may be the server crashing (see `DataFusionConnection`)
+        if (recordInFlightQueries) {
+            DataFusionLogger.clearInFlightQuery(endpoint, query);
+        }
+        return Arrays.copyOf(hashes, rowCount);
+    }
+
+    // Engine side metrics of the server context (see `QueryMetrics` in the server), by field name:
+    // - planning_ns, execution_ns, output_bytes, peak_memory_bytes: last finished query
+    // - queries, total_planning_ns, total_execution_ns, total_output_bytes: all queries so far
+    public Map<String, Long> getQueryMetrics() throws SQLException {
+        Map<String, Long> metrics = new HashMap<>();
+        try {
+            Iterator<Result> results = client.doAction(new Action(QUERY_METRICS_ACTION), token);
+            while (results.hasNext()) {
+                Matcher matcher = METRICS_FIELD.matcher(new String(results.next().getBody(), StandardCharsets.UTF_8));
+                while (matcher.find()) {
+                    metrics.put(matcher.group(1), Long.parseLong(matcher.group(2)));
+                }
+            }
+        } catch (FlightRuntimeException e) {
+            throw new SQLException("Failed to get query metrics from " + endpoint + ": " + e.getMessage(), e);
+        }
+        return metrics;
+    }
+
+    // Bearer token, and the time left before `deadline` if there is a timeout (an expired deadline fails the call
+    // with TIMED_OUT)
+    private CallOption[] callOptions(long timeoutMs, long deadline) {
+        if (timeoutMs <= 0) {
+            return new CallOption[] { token };
+        }
+        long remaining = Math.max(deadline - System.nanoTime(), 1);
+        return new CallOption[] { token, CallOptions.timeout(remaining, TimeUnit.NANOSECONDS) };
+    }
+
+    // Column-wise: update hashes of all rows in the batch with one column, then the next one
+    private static void hashRows(VectorSchemaRoot batch, DictionaryProvider dictionaries, long[] hashes, int offset) {
+        int rows = batch.getRowCount();
+        Arrays.fill(hashes, offset, offset + rows, ROW_HASH_SEED);
+        List<FieldVector> columns = batch.getFieldVectors();
+        for (int c = 0; c < columns.size(); c++) {
+            FieldVector column = columns.get(c);
+            DictionaryEncoding encoding = column.getField().getDictionary();
+            if (encoding == null) {
+                hashColumn(column, c, hashes, offset, rows);
+                continue;
+            }
+            // Dictionary-encoded columns (e.g. of `_dict` tables) arrive as index vectors, hash the values they refer
+            // to, so that they hash like the same column of a plain table
+            try (ValueVector decoded = DictionaryEncoder.decode(column, dictionaries.lookup(encoding.getId()))) {
+                hashColumn((FieldVector) decoded, c, hashes, offset, rows);
+            }
+        }
+    }
+
+    private static void hashColumn(FieldVector column, int c, long[] hashes, int offset, int rows) {
+        // Differs per column, so that NULLs in different columns don't cancel out
+        long nullHash = NULL_HASH + c;
+        if (column instanceof FloatingPointVector) {
+            FloatingPointVector floats = (FloatingPointVector) column;
+            for (int i = 0; i < rows; i++) {
+                long hash = column.isNull(i) ? nullHash : hashFloat(floats, i);
+                hashes[offset + i] = hashes[offset + i] * ROW_HASH_MULTIPLIER + hash;
+            }
+        } else {
+            for (int i = 0; i < rows; i++) {
+                long hash = column.isNull(i) ? nullHash : column.hashCode(i);
+                hashes[offset + i] = hashes[offset + i] * ROW_HASH_MULTIPLIER + hash;
+            }
+        }
+    }
+
+    // Same canonicalization as `ComparatorHelper.canonicalizeResultValue()`: -0.0 equals 0.0
+    private static long hashFloat(FloatingPointVector floats, int index) {
+        double value = floats.getValueAsDouble(index);
+        return Double.hashCode(value == 0.0 ? 0.0 : value);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            sqlClient.close();
+        } catch (Exception e) {
+            throw new SQLException("Failed to close native Flight client", e);
+        } finally {
+            allocator.close();
+        }
+    }
+}
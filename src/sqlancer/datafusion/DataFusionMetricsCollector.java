@@ -0,0 +1,410 @@
+package sqlancer.datafusion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import sqlancer.SQLConnection;
+
+/*
+ * Performance metrics of the generated workload
+ *
+ * Operator-level metrics, enabled by `--explain-analyze-sample-rate`: a sampled fraction of the SELECT queries sent
+ * by oracles (see `DataFusionConnection.takeSampledQueries()`) is run again as `EXPLAIN ANALYZE`. Metrics of each
+ * operator in the plan are summed up per operator type, and the slowest queries are kept with their plans.
+ *
+ * Oracle-level metrics, enabled by `--server-query-metrics`: engine side planning and execution time reported by the
+ * server (see `DataFusionFlightClient.getQueryMetrics()`) for the queries of each check, summed up per oracle, so the
+ * rest of the wall-clock time of checks is harness overhead (network, JDBC conversion, comparing results).
+ *
+ * Join algorithm metrics, recorded by every check of the JOIN_ALGORITHM oracle: execution time of the same query with
+ * each join algorithm (see `DataFusionJoinAlgorithmOracle`), summed up per algorithm.
+ *
+ * Shared by all threads, written every `DUMP_INTERVAL_MS` and at exit to 'logs/datafusion_custom_log/':
+ * - operator_metrics.csv: one line per operator type
+ * - query_metrics.json: same per-operator summary, and the `TOP_N` slowest queries with their plans
+ * - oracle_metrics.csv: one line per oracle
+ * - join_algorithm_metrics.csv: one line per join algorithm
+ */
+public final class DataFusionMetricsCollector {
+    private static final int TOP_N = 20;
+    private static final long DUMP_INTERVAL_MS = 60_000;
+    // e.g. " SortExec: expr=[v0@0 ASC], metrics=[output_rows=10, elapsed_compute=1.2ms, spill_count=0]"
+    private static final Pattern OPERATOR_LINE = Pattern.compile("^\\s*(\\w+):.*metrics=\\[(.*)\\]\\s*$");
+    // e.g. "10", "1.2ms", "12.5µs", "64.0 KB"
+    private static final Pattern METRIC_VALUE = Pattern.compile("^([0-9]+(?:\\.[0-9]+)?)\\s*([A-Za-z\\u00b5]*)$");
+
+    private static DataFusionMetricsCollector instance;
+
+    private final File csvFile;
+    private final File jsonFile;
+    private final File oracleCsvFile;
+    private final File joinAlgorithmCsvFile;
+    // operator type -> metrics summed over all sampled plans
+    private final Map<String, OperatorMetrics> operators = new TreeMap<>();
+    // Fastest at head, so it's the one evicted
+    private final PriorityQueue<SlowQuery> slowestQueries = new PriorityQueue<>(
+            Comparator.comparingLong(q -> q.elapsedMs));
+    private long sampledQueryCount;
+    // oracle -> metrics summed over its checks
+    private final Map<String, OracleMetrics> oracles = new TreeMap<>();
+    // join algorithm -> execution times over all checks, in the order of the oracle
+    private final Map<String, JoinAlgorithmMetrics> joinAlgorithms = new LinkedHashMap<>();
+    private long lastDump = System.currentTimeMillis();
+
+    private DataFusionMetricsCollector(File dir) {
+        this.csvFile = new File(dir, "operator_metrics.csv");
+        this.jsonFile = new File(dir, "query_metrics.json");
+        this.oracleCsvFile = new File(dir, "oracle_metrics.csv");
+        this.joinAlgorithmCsvFile = new File(dir, "join_algorithm_metrics.csv");
+    }
+
+    public static synchronized DataFusionMetricsCollector getInstance() {
+        if (instance == null) {
+            instance = new DataFusionMetricsCollector(new File("logs/datafusion_custom_log/"));
+            DataFusionMetricsCollector collector = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread(collector::dump));
+        }
+        return instance;
+    }
+
+    // Run `queries` as `EXPLAIN ANALYZE` on `con`, failing ones (e.g. expected errors) are skipped
+    public void analyze(SQLConnection con, List<String> queries) {
+        for (String query : queries) {
+            StringBuilder plan = new StringBuilder();
+            long start = System.nanoTime();
+            try (Statement statement = con.createStatement();
+                    ResultSet rs = statement.executeQuery("EXPLAIN ANALYZE " + query)) {
+                while (rs.next()) {
+                    plan.append(rs.getString(2)).append("\n");
+                }
+            } catch (SQLException e) {
+                continue;
+            }
+            record(query, (System.nanoTime() - start) / 1_000_000, plan.toString());
+        }
+        dumpIfDue();
+    }
+
+    private synchronized void record(String query, long elapsedMs, String plan) {
+        sampledQueryCount++;
+        for (String line : plan.split("\n")) {
+            Matcher matcher = OPERATOR_LINE.matcher(line);
+            if (matcher.matches()) {
+                operators.computeIfAbsent(matcher.group(1), k -> new OperatorMetrics()).add(matcher.group(2));
+            }
+        }
+
+        slowestQueries.add(new SlowQuery(query, elapsedMs, plan));
+        if (slowestQueries.size() > TOP_N) {
+            slowestQueries.poll();
+        }
+    }
+
+    /*
+     * Record a passed check of `oracle`, which took `elapsedNs`, with the server metrics of current context taken
+     * before and after it
+     */
+    public void recordOracleCheck(String oracle, long elapsedNs, Map<String, Long> before, Map<String, Long> after) {
+        synchronized (this) {
+            oracles.computeIfAbsent(oracle, k -> new OracleMetrics()).add(elapsedNs, before, after);
+        }
+        dumpIfDue();
+    }
+
+    // Record the execution time of one query with each join algorithm, the fastest one is counted as such
+    public void recordJoinAlgorithmTimes(Map<String, Long> elapsedMs) {
+        long fastestMs = Collections.min(elapsedMs.values());
+        synchronized (this) {
+            for (Map.Entry<String, Long> algorithm : elapsedMs.entrySet()) {
+                joinAlgorithms.computeIfAbsent(algorithm.getKey(), k -> new JoinAlgorithmMetrics())
+                        .add(algorithm.getValue(), algorithm.getValue() == fastestMs);
+            }
+        }
+        dumpIfDue();
+    }
+
+    private void dumpIfDue() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastDump < DUMP_INTERVAL_MS) {
+                return;
+            }
+            lastDump = System.currentTimeMillis();
+        }
+        dump();
+    }
+
+    private synchronized void dump() {
+        try {
+            if (sampledQueryCount > 0) {
+                writeAtomically(csvFile, toCsv());
+                writeAtomically(jsonFile, toJson());
+            }
+            if (!oracles.isEmpty()) {
+                writeAtomically(oracleCsvFile, toOracleCsv());
+            }
+            if (!joinAlgorithms.isEmpty()) {
+                writeAtomically(joinAlgorithmCsvFile, toJoinAlgorithmCsv());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write DataFusion query metrics: " + e.getMessage());
+        }
+    }
+
+    // Readers never see a partially written summary
+    private static void writeAtomically(File file, String content) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String toCsv() throws IOException {
+        StringWriter csv = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(csv,
+                CSVFormat.DEFAULT.builder().setHeader("operator", "instances", "elapsed_compute_ns", "output_rows",
+                        "spill_count", "spilled_bytes", "max_peak_mem_used_bytes").build())) {
+            for (Map.Entry<String, OperatorMetrics> operator : operators.entrySet()) {
+                OperatorMetrics metrics = operator.getValue();
+                printer.printRecord(operator.getKey(), metrics.instances, metrics.elapsedComputeNs, metrics.outputRows,
+                        metrics.spillCount, metrics.spilledBytes, metrics.maxPeakMemUsed);
+            }
+        }
+        return csv.toString();
+    }
+
+    private String toOracleCsv() throws IOException {
+        StringWriter csv = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(csv,
+                CSVFormat.DEFAULT.builder().setHeader("oracle", "checks", "queries", "wall_ns", "planning_ns",
+                        "execution_ns", "harness_ns", "output_bytes", "max_peak_memory_bytes").build())) {
+            for (Map.Entry<String, OracleMetrics> oracle : oracles.entrySet()) {
+                OracleMetrics metrics = oracle.getValue();
+                long harnessNs = Math.max(metrics.wallNs - metrics.planningNs - metrics.executionNs, 0);
+                printer.printRecord(oracle.getKey(), metrics.checks, metrics.queries, metrics.wallNs,
+                        metrics.planningNs, metrics.executionNs, harnessNs, metrics.outputBytes, metrics.maxPeakMemory);
+            }
+        }
+        return csv.toString();
+    }
+
+    private String toJoinAlgorithmCsv() throws IOException {
+        StringWriter csv = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(csv, CSVFormat.DEFAULT.builder()
+                .setHeader("algorithm", "queries", "total_ms", "max_ms", "fastest").build())) {
+            for (Map.Entry<String, JoinAlgorithmMetrics> algorithm : joinAlgorithms.entrySet()) {
+                JoinAlgorithmMetrics metrics = algorithm.getValue();
+                printer.printRecord(algorithm.getKey(), metrics.queries, metrics.totalMs, metrics.maxMs,
+                        metrics.fastest);
+            }
+        }
+        return csv.toString();
+    }
+
+    private String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"sampled_queries\": ").append(sampledQueryCount).append(",\n  \"operators\": [");
+        String separator = "\n";
+        for (Map.Entry<String, OperatorMetrics> operator : operators.entrySet()) {
+            OperatorMetrics metrics = operator.getValue();
+            json.append(separator).append("    {\"operator\": ").append(quote(operator.getKey()))
+                    .append(", \"instances\": ").append(metrics.instances).append(", \"elapsed_compute_ns\": ")
+                    .append(metrics.elapsedComputeNs).append(", \"output_rows\": ").append(metrics.outputRows)
+                    .append(", \"spill_count\": ").append(metrics.spillCount).append(", \"spilled_bytes\": ")
+                    .append(metrics.spilledBytes).append(", \"max_peak_mem_used_bytes\": ")
+                    .append(metrics.maxPeakMemUsed).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"slowest_queries\": [");
+
+        List<SlowQuery> slowest = new ArrayList<>(slowestQueries);
+        slowest.sort(Comparator.comparingLong((SlowQuery q) -> q.elapsedMs).reversed());
+        separator = "\n";
+        for (SlowQuery query : slowest) {
+            json.append(separator).append("    {\"elapsed_ms\": ").append(query.elapsedMs).append(", \"query\": ")
+                    .append(quote(query.query)).append(", \"plan\": ").append(quote(query.plan)).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+            case '"':
+                quoted.append("\\\"");
+                break;
+            case '\\':
+                quoted.append("\\\\");
+                break;
+            case '\n':
+                quoted.append("\\n");
+                break;
+            case '\t':
+                quoted.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /*
+     * Metric value in base unit: nanoseconds for time, bytes for size, plain number for counts (DataFusion prints large
+     * counts like "1.5K")
+     */
+    static double parseMetricValue(String value) {
+        Matcher matcher = METRIC_VALUE.matcher(value.trim());
+        if (!matcher.matches()) {
+            return 0;
+        }
+        double number = Double.parseDouble(matcher.group(1));
+        switch (matcher.group(2)) {
+        case "":
+        case "ns":
+        case "B":
+            return number;
+        case "\u00b5s":
+        case "us":
+            return number * 1e3;
+        case "ms":
+            return number * 1e6;
+        case "s":
+            return number * 1e9;
+        case "K":
+            return number * 1e3;
+        case "M":
+            return number * 1e6;
+        case "KB":
+            return number * 1024;
+        case "MB":
+            return number * 1024 * 1024;
+        case "GB":
+            return number * 1024 * 1024 * 1024;
+        default:
+            return 0;
+        }
+    }
+
+    private static final class OperatorMetrics {
+        private long instances;
+        private long elapsedComputeNs;
+        private long outputRows;
+        private long spillCount;
+        private long spilledBytes;
+        private long maxPeakMemUsed;
+
+        // `metrics` is the content of "metrics=[...]"
+        void add(String metrics) {
+            instances++;
+            for (String metric : metrics.split(",\\s*")) {
+                int sep = metric.indexOf('=');
+                if (sep < 0) {
+                    continue;
+                }
+                long value = (long) parseMetricValue(metric.substring(sep + 1));
+                switch (metric.substring(0, sep).trim()) {
+                case "elapsed_compute":
+                    elapsedComputeNs += value;
+                    break;
+                case "output_rows":
+                    outputRows += value;
+                    break;
+                case "spill_count":
+                    spillCount += value;
+                    break;
+                case "spilled_bytes":
+                    spilledBytes += value;
+                    break;
+                case "peak_mem_used":
+                    maxPeakMemUsed = Math.max(maxPeakMemUsed, value);
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class OracleMetrics {
+        private long checks;
+        private long queries;
+        private long wallNs;
+        private long planningNs;
+        private long executionNs;
+        private long outputBytes;
+        private long maxPeakMemory;
+
+        // Totals of the server context only grow, their difference is the cost of the check's queries
+        void add(long elapsedNs, Map<String, Long> before, Map<String, Long> after) {
+            checks++;
+            wallNs += elapsedNs;
+            long checkQueries = delta("queries", before, after);
+            queries += checkQueries;
+            planningNs += delta("total_planning_ns", before, after);
+            executionNs += delta("total_execution_ns", before, after);
+            outputBytes += delta("total_output_bytes", before, after);
+            if (checkQueries > 0) {
+                maxPeakMemory = Math.max(maxPeakMemory, after.getOrDefault("peak_memory_bytes", 0L));
+            }
+        }
+
+        private static long delta(String field, Map<String, Long> before, Map<String, Long> after) {
+            return after.getOrDefault(field, 0L) - before.getOrDefault(field, 0L);
+        }
+    }
+
+    private static final class JoinAlgorithmMetrics {
+        private long queries;
+        private long totalMs;
+        private long maxMs;
+        // Queries on which this algorithm was the fastest (ties count for all of them)
+        private long fastest;
+
+        void add(long elapsedMs, boolean isFastest) {
+            queries++;
+            totalMs += elapsedMs;
+            maxMs = Math.max(maxMs, elapsedMs);
+            if (isFastest) {
+                fastest++;
+            }
+        }
+    }
+
+    private static final class SlowQuery {
+        private final String query;
+        private final long elapsedMs;
+        private final String plan;
+
+        SlowQuery(String query, long elapsedMs, String plan) {
+            this.query = query;
+            this.elapsedMs = elapsedMs;
+            this.plan = plan;
+        }
+    }
+}
@@ -12,19 +12,77 @@ import sqlancer.OracleFactory;
 import sqlancer.common.oracle.TestOracle;
 import sqlancer.datafusion.DataFusionOptions.DataFusionOracleFactory;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.test.DataFusionCERTOracle;
+import sqlancer.datafusion.test.DataFusionConcurrencyOracle;
+import sqlancer.datafusion.test.DataFusionHangOracle;
+import sqlancer.datafusion.test.DataFusionInlinePQS;
+import sqlancer.datafusion.test.DataFusionJoinAlgorithmOracle;
 import sqlancer.datafusion.test.DataFusionNoCrashAggregate;
 import sqlancer.datafusion.test.DataFusionNoCrashWindow;
 import sqlancer.datafusion.test.DataFusionNoRECOracle;
 import sqlancer.datafusion.test.DataFusionPQS;
+import sqlancer.datafusion.test.DataFusionParallelismOracle;
 import sqlancer.datafusion.test.DataFusionQueryPartitioningAggrTester;
 import sqlancer.datafusion.test.DataFusionQueryPartitioningHavingTester;
 import sqlancer.datafusion.test.DataFusionQueryPartitioningWhereTester;
+import sqlancer.datafusion.test.DataFusionSpillOracle;
 
 @Parameters(commandDescription = "DataFusion")
 public class DataFusionOptions implements DBMSSpecificOptions<DataFusionOracleFactory> {
     @Parameter(names = "--debug-info", description = "Show debug messages related to DataFusion", arity = 0)
     public boolean showDebugInfo;
 
+    @Parameter(names = "--bulk-rows", description = "Load up to N rows into each base table from generated Arrow IPC files, instead of INSERT statements (0 to disable)")
+    public int bulkRows;
+
+    @Parameter(names = "--bulk-data-dir", description = "Directory for data files of --bulk-rows, --parquet-tables and --sorted-tables, must be readable and writable by the DataFusion server")
+    public String bulkDataDir = "datafusion_bulk_data";
+
+    @Parameter(names = "--dictionary-tables", description = "Add an equivalent memory table (e.g. t1_dict) of each base table with TEXT columns, with them dictionary-encoded", arity = 1)
+    public boolean dictionaryTables;
+
+    @Parameter(names = "--partitioned-tables", description = "Add an equivalent memory table (e.g. t1_partitioned) of each base table, with its rows split into several partitions", arity = 1)
+    public boolean partitionedTables;
+
+    @Parameter(names = "--parquet-tables", description = "Add a Parquet-backed equivalent table (e.g. t1_parquet) of each base table, written by the server under --bulk-data-dir (the server has to share the filesystem of SQLancer)", arity = 1)
+    public boolean parquetTables;
+
+    @Parameter(names = "--sorted-tables", description = "Add an equivalent table (e.g. t1_sorted) of each base table, written by the server under --bulk-data-dir in a random order declared with WITH ORDER (the server has to share the filesystem of SQLancer)", arity = 1)
+    public boolean sortedTables;
+
+    @Parameter(names = "--native-flight-client", description = "Fetch and compare query partitioning results as Arrow batches through a native Flight SQL client, instead of strings through JDBC", arity = 1)
+    public boolean nativeFlightClient;
+
+    @Parameter(names = "--spill-memory-limit", description = "Memory pool size (in bytes) of the server session used by the SPILL oracle")
+    public long spillMemoryLimit = 1024 * 1024;
+
+    @Parameter(names = "--stress-connections", description = "Number of connections running the same query at the same time in the CONCURRENCY oracle")
+    public int stressConnections = 4;
+
+    @Parameter(names = "--hang-timeout-ms", description = "Base deadline of queries in the HANG oracle, extended with the input size of the query")
+    public long hangTimeoutMs = 5000;
+
+    @Parameter(names = "--norec-batch-size", description = "Number of predicates checked at once by the NOREC oracle, with one unoptimized scan for all of them and their optimized counts in one UNION ALL (1 to disable)")
+    public int norecBatchSize = 1;
+
+    @Parameter(names = "--explain-analyze-sample-rate", description = "Fraction of oracle queries also run as EXPLAIN ANALYZE, to collect operator metrics in 'logs/datafusion_custom_log/' (0 to disable)")
+    public double explainAnalyzeSampleRate;
+
+    @Parameter(names = "--server-query-metrics", description = "Record engine side planning and execution time reported by the server for each oracle, in 'logs/datafusion_custom_log/oracle_metrics.csv'", arity = 1)
+    public boolean serverQueryMetrics;
+
+    @Parameter(names = "--endpoints", description = "Comma-separated DataFusion server endpoints (host:port), each thread is assigned one round-robin")
+    public String endpoints = "127.0.0.1:50051";
+
+    @Parameter(names = "--spawn-servers", description = "Launch N local DataFusion servers on consecutive ports starting from --spawn-base-port, instead of using --endpoints")
+    public int spawnServers;
+
+    @Parameter(names = "--spawn-base-port", description = "Port of the first DataFusion server launched by --spawn-servers")
+    public int spawnBasePort = 50051;
+
+    @Parameter(names = "--server-binary", description = "Path to the `datafusion-server` binary used by --spawn-servers")
+    public String serverBinary = "datafusion-server";
+
     @Override
     public List<DataFusionOracleFactory> getTestOracleFactory() {
         return Arrays.asList(DataFusionOracleFactory.PQS, DataFusionOracleFactory.NO_CRASH_WINDOW,
@@ -76,6 +134,48 @@ public class DataFusionOptions implements DBMSSpecificOptions<DataFusionOracleFa
             public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
                 return new DataFusionNoCrashWindow(globalState);
             }
+        },
+        SPILL {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionSpillOracle(globalState);
+            }
+        },
+        PARALLELISM {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionParallelismOracle(globalState);
+            }
+        },
+        JOIN_ALGORITHM {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionJoinAlgorithmOracle(globalState);
+            }
+        },
+        CONCURRENCY {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionConcurrencyOracle(globalState);
+            }
+        },
+        HANG {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionHangOracle(globalState);
+            }
+        },
+        CERT {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionCERTOracle(globalState);
+            }
+        },
+        PQS_INLINE {
+            @Override
+            public TestOracle<DataFusionGlobalState> create(DataFusionGlobalState globalState) throws SQLException {
+                return new DataFusionInlinePQS(globalState);
+            }
         }
     }
 
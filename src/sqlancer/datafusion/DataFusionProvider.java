@@ -6,8 +6,9 @@ import static sqlancer.datafusion.DataFusionUtil.displayTables;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -15,15 +16,19 @@ import com.google.auto.service.AutoService;
 
 import sqlancer.DatabaseProvider;
 import sqlancer.IgnoreMeException;
+import sqlancer.OracleFactory;
 import sqlancer.Randomly;
+import sqlancer.Reproducer;
 import sqlancer.SQLConnection;
 import sqlancer.SQLGlobalState;
 import sqlancer.SQLProviderAdapter;
+import sqlancer.common.oracle.TestOracle;
 import sqlancer.common.query.SQLQueryAdapter;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionSchema.DataFusionTable;
 import sqlancer.datafusion.DataFusionUtil.DataFusionInstanceID;
 import sqlancer.datafusion.DataFusionUtil.DataFusionLogger;
+import sqlancer.datafusion.gen.DataFusionBulkDataGenerator;
 import sqlancer.datafusion.gen.DataFusionInsertGenerator;
 import sqlancer.datafusion.gen.DataFusionTableGenerator;
 
@@ -48,6 +53,10 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
     // Supported physical implementation for tables:
     // 1. Memory table (t1)
     // 2. Memory table use StringView for TEXT columns (t1_stringview)
+    // 3. Arrow IPC file, in bulk data mode (t1_arrow, see `DataFusionBulkDataGenerator`)
+    // 4. Opt-in: memory table with dictionary-encoded TEXT columns (t1_dict, `--dictionary-tables`), memory table
+    // split into partitions (t1_partitioned, `--partitioned-tables`), Parquet files (t1_parquet, `--parquet-tables`)
+    // and Parquet files in a declared order (t1_sorted, `--sorted-tables`)
     // Note: It's possible only convert random TEXT columns to StringView
     @Override
     public void generateDatabase(DataFusionGlobalState globalState) throws Exception {
@@ -57,10 +66,8 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
         int tableCount = Randomly.fromOptions(1, 2, 3, 4);
         for (int i = 0; i < tableCount; i++) {
             SQLQueryAdapter queryCreateRandomTable = new DataFusionTableGenerator().getCreateStmt(globalState);
-            queryCreateRandomTable.execute(globalState);
+            executeAndLog(globalState, queryCreateRandomTable);
             globalState.updateSchema();
-            globalState.dfLogger.appendToLog(DataFusionLogger.DataFusionLogType.DML,
-                    queryCreateRandomTable.toString() + "\n");
         }
 
         // Now only `INSERT` DML is supported
@@ -78,8 +85,54 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
             dfAssert(false, "Generate Database failed.");
         }
 
-        // Randomly insert some data into existing tables
+        if (globalState.getDbmsSpecificOptions().bulkRows > 0) {
+            // Bulk data mode: load large generated files instead of random inserts
+            // (`t1_arrow` has to stay equivalent to `t1`)
+            for (DataFusionTable table : allBaseTables) {
+                for (SQLQueryAdapter loadQuery : DataFusionBulkDataGenerator.getLoadQueries(globalState, table)) {
+                    executeAndLog(globalState, loadQuery);
+                }
+            }
+        } else {
+            insertRandomRows(globalState, allBaseTables);
+        }
+
+        // Construct mutated tables like t1_stringview, t1_dict, t1_partitioned, t1_parquet, t1_sorted, etc.
+        // ============================
+        DataFusionTableGenerator tableGenerator = new DataFusionTableGenerator();
         for (DataFusionTable table : allBaseTables) {
+            List<SQLQueryAdapter> queries = new ArrayList<>();
+            tableGenerator.createStringViewTable(globalState, table).ifPresent(queries::add);
+            if (globalState.getDbmsSpecificOptions().dictionaryTables) {
+                tableGenerator.createDictionaryTable(globalState, table).ifPresent(queries::add);
+            }
+            if (globalState.getDbmsSpecificOptions().partitionedTables) {
+                queries.add(tableGenerator.createPartitionedTable(globalState, table));
+            }
+            if (globalState.getDbmsSpecificOptions().parquetTables) {
+                queries.addAll(tableGenerator.createParquetTable(globalState, table));
+            }
+            if (globalState.getDbmsSpecificOptions().sortedTables) {
+                queries.addAll(tableGenerator.createSortedTable(globalState, table));
+            }
+            for (SQLQueryAdapter query : queries) {
+                executeAndLog(globalState, query);
+            }
+        }
+        globalState.updateSchema();
+        List<DataFusionTable> allTables = globalState.getSchema().getDatabaseTables();
+        List<String> allTablesName = allTables.stream().map(DataFusionTable::getName).collect(Collectors.toList());
+
+        // TODO(datafusion) add `DataFUsionLogType.STATE` for this whole db state log
+        if (globalState.getDbmsSpecificOptions().showDebugInfo) {
+            System.out.println(displayTables(globalState, allTablesName));
+        }
+    }
+
+    // Randomly insert some data into existing tables
+    private static void insertRandomRows(DataFusionGlobalState globalState, List<DataFusionTable> tables)
+            throws Exception {
+        for (DataFusionTable table : tables) {
             int nInsertQuery = globalState.getRandomly().getInteger(0, globalState.getOptions().getMaxNumberInserts());
 
             for (int i = 0; i < nInsertQuery; i++) {
@@ -91,30 +144,124 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
                     continue;
                 }
 
-                insertQuery.execute(globalState);
-                globalState.dfLogger.appendToLog(DataFusionLogger.DataFusionLogType.DML, insertQuery.toString() + "\n");
+                executeAndLog(globalState, insertQuery);
             }
         }
+    }
 
-        // Construct mutated tables like t1_stringview, etc.
-        // ============================
-        for (DataFusionTable table : allBaseTables) {
-            Optional<SQLQueryAdapter> queryCreateStringViewTable = new DataFusionTableGenerator()
-                    .createStringViewTable(globalState, table);
-            if (queryCreateStringViewTable.isPresent()) {
-                queryCreateStringViewTable.get().execute(globalState);
-                globalState.dfLogger.appendToLog(DataFusionLogger.DataFusionLogType.DML,
-                        queryCreateStringViewTable.get().toString() + "\n");
+    // Statements are also recorded in `StateToReproduce`, for `--use-reducer` to replay them on a new database
+    private static void executeAndLog(DataFusionGlobalState globalState, SQLQueryAdapter query) throws Exception {
+        query.execute(globalState);
+        globalState.getState().logStatement(query);
+        globalState.dfLogger.appendToLog(DataFusionLogger.DataFusionLogType.DML, query.toString() + "\n");
+    }
+
+    // A server spawned by SQLancer crashed and got restarted while testing this database: its tables are gone, and
+    // the failures are already reported by `DataFusionServerSupervisor`, continue with a new database
+    //
+    // Data files of the database are deleted when done, unless a bug was found: the logged reproducer and the
+    // reducer still read them
+    @Override
+    public Reproducer<DataFusionGlobalState> generateAndTestDatabase(DataFusionGlobalState globalState)
+            throws Exception {
+        boolean keepDataFiles = false;
+        try {
+            Reproducer<DataFusionGlobalState> reproducer = super.generateAndTestDatabase(globalState);
+            keepDataFiles = reproducer != null;
+            return reproducer;
+        } catch (Exception | AssertionError e) {
+            if (globalState.isServerRestarted()) {
+                throw new IgnoreMeException();
+            }
+            keepDataFiles = e instanceof AssertionError;
+            throw e;
+        } finally {
+            if (!keepDataFiles) {
+                DataFusionBulkDataGenerator.deleteDataFiles(globalState);
             }
         }
-        globalState.updateSchema();
-        List<DataFusionTable> allTables = globalState.getSchema().getDatabaseTables();
-        List<String> allTablesName = allTables.stream().map(DataFusionTable::getName).collect(Collectors.toList());
+    }
 
-        // TODO(datafusion) add `DataFUsionLogType.STATE` for this whole db state log
-        if (globalState.getDbmsSpecificOptions().showDebugInfo) {
-            System.out.println(displayTables(globalState, allTablesName));
+    @Override
+    protected TestOracle<DataFusionGlobalState> getTestOracle(DataFusionGlobalState globalState) throws Exception {
+        TestOracle<DataFusionGlobalState> oracle = super.getTestOracle(globalState);
+        double sampleRate = globalState.getDbmsSpecificOptions().explainAnalyzeSampleRate;
+        return new TestOracle<DataFusionGlobalState>() {
+            @Override
+            public void check() throws Exception {
+                try {
+                    if (sampleRate > 0) {
+                        checkAndSampleMetrics();
+                    } else {
+                        oracle.check();
+                    }
+                } catch (Exception | AssertionError e) {
+                    // Escape the per-query loop (which would keep running queries, or reduce a bogus reproducer)
+                    if (globalState.isServerRestarted()) {
+                        throw new ServerRestartedException(e);
+                    }
+                    throw e;
+                }
+            }
+
+            // Queries sent by the oracle are sampled, and run as `EXPLAIN ANALYZE` after it passes. Samples of a
+            // failed check (e.g. `IgnoreMeException`) are dropped, not charged to the next one
+            private void checkAndSampleMetrics() throws Exception {
+                DataFusionConnection connection = (DataFusionConnection) globalState.getConnection();
+                connection.setMetricsSampleRate(sampleRate);
+                List<String> sampledQueries;
+                try {
+                    oracle.check();
+                } finally {
+                    connection.setMetricsSampleRate(0);
+                    sampledQueries = connection.takeSampledQueries();
+                }
+                DataFusionMetricsCollector.getInstance().analyze(connection, sampledQueries);
+            }
+
+            @Override
+            public Reproducer<DataFusionGlobalState> getLastReproducer() {
+                return oracle.getLastReproducer();
+            }
+
+            @Override
+            public String getLastQueryString() {
+                return oracle.getLastQueryString();
+            }
+        };
+    }
+
+    @Override
+    protected TestOracle<DataFusionGlobalState> createTestOracle(OracleFactory<DataFusionGlobalState> factory,
+            DataFusionGlobalState globalState) throws Exception {
+        TestOracle<DataFusionGlobalState> oracle = super.createTestOracle(factory, globalState);
+        if (!globalState.getDbmsSpecificOptions().serverQueryMetrics) {
+            return oracle;
         }
+        String oracleName = factory.toString();
+        return new TestOracle<DataFusionGlobalState>() {
+            // Server metrics around the check tell its engine time from its harness overhead
+            @Override
+            public void check() throws Exception {
+                DataFusionFlightClient client = ((DataFusionConnection) globalState.getConnection()).getFlightClient();
+                Map<String, Long> before = client.getQueryMetrics();
+                long start = System.nanoTime();
+                oracle.check();
+                long elapsedNs = System.nanoTime() - start;
+                DataFusionMetricsCollector.getInstance().recordOracleCheck(oracleName, elapsedNs, before,
+                        client.getQueryMetrics());
+            }
+
+            @Override
+            public Reproducer<DataFusionGlobalState> getLastReproducer() {
+                return oracle.getLastReproducer();
+            }
+
+            @Override
+            public String getLastQueryString() {
+                return oracle.getLastQueryString();
+            }
+        };
     }
 
     @Override
@@ -122,17 +269,50 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
         if (globalState.getDbmsSpecificOptions().showDebugInfo) {
             System.out.println("A new database get created!\n");
         }
+        DataFusionEndpoints endpoints = DataFusionEndpoints.getInstance(globalState.getDbmsSpecificOptions());
+        String endpoint = endpoints.getEndpoint();
+        globalState.endpoint = endpoint;
+        globalState.serverGeneration = endpoints.getGeneration(endpoint);
+        Connection connection = connect(endpoint, globalState.getDatabaseName(), getSessionKey());
+
+        // In-flight queries are only reported by supervisors of spawned servers
+        return new DataFusionConnection(connection, endpoint, globalState.getDbmsSpecificOptions().spawnServers > 0);
+    }
+
+    // Server side session of the current worker thread. Not the thread name: `Main` renames the thread after the
+    // database of each try, and the server would then keep the context of each finished try
+    static String getSessionKey() {
+        return "worker-" + Thread.currentThread().getId();
+    }
+
+    // Each connection does a Flight handshake, and gets a new empty context on server side
+    static Connection connect(String endpoint, String databaseName, String session) throws SQLException {
+        Properties headers = new Properties();
+        // The server drops the previous context of the same 'session' (i.e. the database
+        // this thread tested before)
+        headers.setProperty("create", databaseName);
+        headers.setProperty("session", session);
+        return connect(endpoint, headers);
+    }
+
+    // Hack: DataFusion server reads JDBC properties as handshake headers (see `do_handshake()` in server)
+    static Connection connect(String endpoint, Properties headers) throws SQLException {
         Properties props = new Properties();
         props.setProperty("UseEncryption", "false");
         // must set 'user' and 'password' to trigger server 'do_handshake()'
         props.setProperty("user", "foo");
         props.setProperty("password", "bar");
-        props.setProperty("create", globalState.getDatabaseName()); // Hack: use this property to let DataFusion server
-        // clear the current context
-        String url = "jdbc:arrow-flight-sql://127.0.0.1:50051";
-        Connection connection = DriverManager.getConnection(url, props);
+        props.putAll(headers);
+        String url = "jdbc:arrow-flight-sql://" + endpoint;
+        return DriverManager.getConnection(url, props);
+    }
 
-        return new SQLConnection(connection);
+    private static final class ServerRestartedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ServerRestartedException(Throwable cause) {
+            super(cause);
+        }
     }
 
     @Override
@@ -145,9 +325,15 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
     // It will store global states including:
     // JDBC connection to DataFusion server
     // Logger for this thread
+    // DMLs executed on current database (used as reproducer prefix by oracles)
     public static class DataFusionGlobalState extends SQLGlobalState<DataFusionOptions, DataFusionSchema> {
         public DataFusionLogger dfLogger;
         DataFusionInstanceID id;
+        // Server this database lives on, and its restart count when the database is created
+        String endpoint;
+        int serverGeneration;
+        // Append-only, populated by `DataFusionLogger.appendToLog(DML, ...)`
+        private final StringBuilder dmlReplay = new StringBuilder();
 
         public DataFusionGlobalState() {
             // HACK: test will only run in spawned thread, not main thread
@@ -164,6 +350,28 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
             }
         }
 
+        public void appendToReplay(String dml) {
+            dmlReplay.append(dml);
+        }
+
+        // All DMLs executed so far on current database, each line starts with '/*DML*/'
+        // Same content as `DataFusionUtil.getReplay()`, without re-reading the log file
+        public String getReplay() {
+            return dmlReplay.toString();
+        }
+
+        public boolean isServerRestarted() {
+            if (endpoint == null) {
+                return false;
+            }
+            try {
+                return DataFusionEndpoints.getInstance(getDbmsSpecificOptions())
+                        .getGeneration(endpoint) != serverGeneration;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
         @Override
         protected DataFusionSchema readSchema() throws SQLException {
             return DataFusionSchema.fromConnection(getConnection(), getDatabaseName());
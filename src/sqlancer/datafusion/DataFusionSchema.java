@@ -62,7 +62,7 @@ public class DataFusionSchema extends AbstractSchema<DataFusionGlobalState, Data
         // base table names are like t1, t2, ...
         // equivalent tables are like t1_csv, t1_parquet, ...
         for (DataFusionTable t : databaseTables) {
-            String baseTableName = t.getName().split("_")[0];
+            String baseTableName = t.getBaseName();
             String patternString = "^" + baseTableName + "(_.*)?$"; // t1 or t1_*
             Pattern pattern = Pattern.compile(patternString);
 
@@ -145,6 +145,8 @@ public class DataFusionSchema extends AbstractSchema<DataFusionGlobalState, Data
                 return DataFusionDataType.STRING;
             case "Utf8View":
                 return DataFusionDataType.STRING;
+            case "Dictionary(Int32, Utf8)":
+                return DataFusionDataType.STRING;
             default:
                 dfAssert(false, "Uncovered branch typeString: " + typeString);
             }
@@ -255,6 +257,11 @@ public class DataFusionSchema extends AbstractSchema<DataFusionGlobalState, Data
             }
         }
 
+        // Base table this one is equivalent to, e.g. t1 for t1_parquet (see `fromConnection()`)
+        public String getBaseName() {
+            return getNotAliasedName().split("_")[0];
+        }
+
         // TODO(datafusion) Now implementation is hacky, should send a patch
         // to core to support this
         @Override
@@ -0,0 +1,292 @@
+package sqlancer.datafusion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sqlancer.datafusion.DataFusionUtil.DataFusionErrorSink;
+import sqlancer.datafusion.DataFusionUtil.DataFusionLogger;
+
+/*
+ * Supervises one local `datafusion-server` process (launched by `--spawn-servers`)
+ *
+ * A watchdog thread checks every second that the process is alive, and now and then that it answers Flight handshakes
+ * (i.e. opening a JDBC connection). Handshakes can be slow on a server busy with a heavy query (e.g. spilling), so
+ * failed ones back off, and a process that is still alive is only considered dead once it also stops accepting TCP
+ * connections. If the process exits, or is considered dead, it:
+ * 1. Writes a crash report to 'error_report.log': panic output of the server, and the in-flight query of each thread
+ * using this server (see `DataFusionLogger.takeInFlightQueries()`)
+ * 2. Restarts the server on the same port, and bumps `getGeneration()`
+ *
+ * A relaunch that fails (e.g. binary gone, port still bound, or the new process dies during startup) is retried with
+ * exponential backoff, without another crash report. After `MAX_RESTART_ATTEMPTS` failed relaunches in a row, or if
+ * the watchdog is interrupted, the supervisor stops and threads waiting for the server fail instead of waiting forever.
+ *
+ * Threads notice the restart by generation change (see `DataFusionProvider.generateAndTestDatabase()`), give up their
+ * database (which is lost with the old process) and continue with a new one.
+ */
+public final class DataFusionServerSupervisor {
+    private static final int STARTUP_TIMEOUT_MS = 60_000;
+    private static final int POLL_INTERVAL_MS = 200;
+    private static final int WATCH_INTERVAL_MS = 1000;
+    // Doubled after each consecutive failed handshake
+    private static final int HANDSHAKE_INTERVAL_MS = 10_000;
+    private static final int MAX_HANDSHAKE_BACKOFF_SHIFT = 4;
+    private static final int HANDSHAKE_TIMEOUT_SECONDS = 10;
+    // Consecutive failed handshakes before a running server not accepting connections is considered dead
+    private static final int MAX_FAILED_HANDSHAKES = 3;
+    // Doubled after each consecutive failed relaunch
+    private static final int RESTART_BACKOFF_MS = 1000;
+    private static final int MAX_RESTART_BACKOFF_SHIFT = 5;
+    private static final int MAX_RESTART_ATTEMPTS = 10;
+    // Only keep the tail of server output in crash report (server logs can be verbose with RUST_LOG)
+    private static final int MAX_REPORTED_OUTPUT_BYTES = 16 * 1024;
+
+    private final String binary;
+    private final int port;
+    private final String endpoint;
+    private final File outputFile;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private volatile Process process;
+    private volatile boolean running;
+    // Set when the watchdog gives up or is interrupted, the server won't come back
+    private volatile boolean stopped;
+    // Consecutive failed relaunches since the last crash, only accessed by the watchdog
+    private int failedRestarts;
+    private long nextRestart;
+    // Length of `outputFile` when current process is started, crash report only includes output after it
+    private long outputOffset;
+
+    public DataFusionServerSupervisor(String binary, int port, File logDir) {
+        this.binary = binary;
+        this.port = port;
+        this.endpoint = "127.0.0.1:" + port;
+        this.outputFile = new File(logDir, "server-" + port + ".log");
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    // Incremented on every restart, databases created in a previous generation are gone
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    public synchronized void start() throws SQLException {
+        outputOffset = outputFile.length();
+        ProcessBuilder builder = new ProcessBuilder(binary, "--port", String.valueOf(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(outputFile));
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new SQLException("Failed to launch DataFusion server '" + binary + "'", e);
+        }
+    }
+
+    public void awaitStartup() throws SQLException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (!DataFusionEndpoints.isHealthy(endpoint)) {
+            if (!process.isAlive()) {
+                throw new SQLException("DataFusion server at " + endpoint + " exited with code " + process.exitValue());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new SQLException("DataFusion server at " + endpoint + " did not start in time");
+            }
+            sleep(POLL_INTERVAL_MS);
+        }
+        running = true;
+    }
+
+    // Block the calling thread while the server is being restarted
+    public void awaitRunning() throws SQLException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (!running) {
+            if (stopped) {
+                throw new SQLException("DataFusion server at " + endpoint + " could not be restarted");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new SQLException("DataFusion server at " + endpoint + " is not back after restart");
+            }
+            sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    public void startWatchdog() {
+        Thread watchdog = new Thread(this::watch, "datafusion-supervisor-" + port);
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        Process current = process;
+        if (current != null) {
+            current.destroy();
+        }
+    }
+
+    private void watch() {
+        try {
+            int failedHandshakes = 0;
+            long nextHandshake = System.currentTimeMillis() + HANDSHAKE_INTERVAL_MS;
+            while (!stopped) {
+                Thread.sleep(WATCH_INTERVAL_MS);
+                if (stopped) {
+                    // `stop()` was called while sleeping, the process is gone on purpose
+                    break;
+                }
+
+                if (!running) {
+                    // Last relaunch failed, the crash is already reported
+                    if (System.currentTimeMillis() >= nextRestart) {
+                        relaunch();
+                    }
+                    failedHandshakes = 0;
+                    nextHandshake = System.currentTimeMillis() + HANDSHAKE_INTERVAL_MS;
+                    continue;
+                }
+                if (!process.isAlive()) {
+                    restart("exited with code " + process.exitValue());
+                    failedHandshakes = 0;
+                    nextHandshake = System.currentTimeMillis() + HANDSHAKE_INTERVAL_MS;
+                    continue;
+                }
+                if (System.currentTimeMillis() < nextHandshake) {
+                    continue;
+                }
+
+                failedHandshakes = handshake() ? 0 : failedHandshakes + 1;
+                // A busy server keeps accepting TCP connections, even when it's too slow to answer handshakes
+                if (failedHandshakes >= MAX_FAILED_HANDSHAKES && process.isAlive()
+                        && !DataFusionEndpoints.isHealthy(endpoint)) {
+                    restart("stopped accepting connections");
+                    failedHandshakes = 0;
+                }
+                nextHandshake = System.currentTimeMillis()
+                        + ((long) HANDSHAKE_INTERVAL_MS << Math.min(failedHandshakes, MAX_HANDSHAKE_BACKOFF_SHIFT));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+        }
+    }
+
+    private boolean handshake() {
+        try (Connection connection = DataFusionProvider.connect(endpoint, "supervisor",
+                "datafusion-supervisor-" + port)) {
+            return connection.isValid(HANDSHAKE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Called once per crash
+    private void restart(String reason) throws InterruptedException {
+        running = false;
+        kill(process);
+        reportCrash(reason);
+        generation.incrementAndGet();
+        failedRestarts = 0;
+        relaunch();
+    }
+
+    private void relaunch() throws InterruptedException {
+        try {
+            start();
+            awaitStartup();
+            failedRestarts = 0;
+        } catch (SQLException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Interrupted while restarting DataFusion server at " + endpoint);
+            }
+            // The new process may still be starting up and hold the port
+            kill(process);
+            failedRestarts++;
+            if (failedRestarts >= MAX_RESTART_ATTEMPTS) {
+                reportGivingUp(e);
+                stopped = true;
+                return;
+            }
+            long backoff = (long) RESTART_BACKOFF_MS << Math.min(failedRestarts - 1, MAX_RESTART_BACKOFF_SHIFT);
+            nextRestart = System.currentTimeMillis() + backoff;
+            System.err.println("Failed to restart DataFusion server at " + endpoint + " (attempt " + failedRestarts
+                    + "/" + MAX_RESTART_ATTEMPTS + "), retrying in " + backoff + "ms: " + e.getMessage());
+        }
+    }
+
+    private static void kill(Process target) throws InterruptedException {
+        if (target != null && target.isAlive()) {
+            target.destroyForcibly();
+            target.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void reportGivingUp(SQLException lastError) {
+        String formattedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        String report = "Server crash@" + formattedDateTime + " (" + endpoint + ")\n" + "Giving up restarting the "
+                + "DataFusion server after " + failedRestarts + " failed attempts: " + lastError.getMessage() + "\n"
+                + "Server output:\n" + readServerOutput() + "\n";
+        writeReport(report);
+    }
+
+    private void reportCrash(String reason) {
+        StringBuilder report = new StringBuilder();
+        String formattedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        report.append("Server crash@").append(formattedDateTime).append(" (").append(endpoint).append(")\n");
+        report.append("DataFusion server ").append(reason).append(", restarting it\n");
+
+        report.append("In-flight queries:\n");
+        Map<String, String> inFlight = DataFusionLogger.takeInFlightQueries(endpoint);
+        if (inFlight.isEmpty()) {
+            report.append("    (none)\n");
+        }
+        for (Map.Entry<String, String> query : inFlight.entrySet()) {
+            report.append("    [").append(query.getKey()).append("] ").append(query.getValue()).append(";\n");
+        }
+
+        report.append("Server output:\n").append(readServerOutput()).append("\n");
+        writeReport(report.toString());
+    }
+
+    private void writeReport(String report) {
+        System.err.println(report);
+        try {
+            DataFusionErrorSink.getInstance(new File(outputFile.getParentFile(), "error_report.log")).append(report);
+        } catch (IOException e) {
+            System.err.println("Failed to write crash report: " + e.getMessage());
+        }
+    }
+
+    private String readServerOutput() {
+        try (RandomAccessFile output = new RandomAccessFile(outputFile, "r")) {
+            long start = Math.max(outputOffset, output.length() - MAX_REPORTED_OUTPUT_BYTES);
+            byte[] bytes = new byte[(int) (output.length() - start)];
+            output.seek(start);
+            output.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "(failed to read " + outputFile + ": " + e.getMessage() + ")";
+        }
+    }
+
+    private static void sleep(int millis) throws SQLException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for DataFusion server", e);
+        }
+    }
+}
@@ -7,7 +7,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -15,6 +19,12 @@ import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 
@@ -81,6 +91,8 @@ public final class DataFusionUtil {
 
     /*
      * Fetch all DMLs from logs/database*-cur.log
+     *
+     * Only for reproducing offline, during fuzzing use `DataFusionGlobalState.getReplay()` instead
      */
     public static String getReplay(String dbname) {
         String path = "./logs/datafusion/" + dbname + "-cur.log";
@@ -121,12 +133,18 @@ public final class DataFusionUtil {
      * Extra logs stored in 'logs/datafusion_custom_log/' In case re-run overwrite previous logs
      */
     public static class DataFusionLogger {
+        private static final DateTimeFormatter ERROR_TIME_FORMATTER = DateTimeFormatter
+                .ofPattern("yyyy-MM-dd HH:mm:ss");
+        // session key of a worker thread -> statement it is running on a server (see `DataFusionConnection`)
+        // Used by `DataFusionServerSupervisor` to report which query crashed the server
+        private static final Map<String, InFlightQuery> IN_FLIGHT_QUERIES = new ConcurrentHashMap<>();
+
         private final DataFusionInstanceID dfID;
         private final DataFusionGlobalState state;
         /*
-         * Log file handles
+         * Log file handles (error log is shared by all threads, see `DataFusionErrorSink`)
          */
-        private final File errorLogFile;
+        private final DataFusionErrorSink errorSink;
 
         public DataFusionLogger(DataFusionGlobalState globalState, DataFusionInstanceID id) throws Exception {
             this.state = globalState;
@@ -139,8 +157,7 @@ public final class DataFusionUtil {
             }
 
             // Setup error.log
-            errorLogFile = new File(baseDir, "error_report.log");
-            errorLogFile.createNewFile();
+            errorSink = DataFusionErrorSink.getInstance(new File(baseDir, "error_report.log"));
         }
 
         // Caller is responsible for adding '\n' at the end of logContent
@@ -151,18 +168,15 @@ public final class DataFusionUtil {
             String logLineHeader = "";
             switch (logType) {
             case ERROR:
-                try {
-                    logFileWriter = new FileWriter(errorLogFile, true);
-                } catch (IOException e) {
-                    dfAssert(false, "Failed to create FileWriter for errorLogFIle");
-                }
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                String formattedDateTime = LocalDateTime.now().format(formatter);
+                String formattedDateTime = LocalDateTime.now().format(ERROR_TIME_FORMATTER);
                 logLineHeader = "Run@" + formattedDateTime + " (" + dfID + ")\n";
-                break;
+                // One record per error report, written as a whole
+                errorSink.append(logLineHeader + logContent + "\n");
+                return;
             case DML:
                 logFileWriter = state.getLogger().getCurrentFileWriter();
                 logLineHeader = "/*DML*/";
+                state.appendToReplay(toReplayLines(logLineHeader, logContent));
                 break;
             case SELECT:
                 logFileWriter = state.getLogger().getCurrentFileWriter();
@@ -187,11 +201,110 @@ public final class DataFusionUtil {
             }
         }
 
+        public static void setInFlightQuery(String endpoint, String query) {
+            IN_FLIGHT_QUERIES.put(DataFusionProvider.getSessionKey(), new InFlightQuery(endpoint, query));
+        }
+
+        // Called once `query` of the current thread is done, unless a later statement of the thread replaced it
+        public static void clearInFlightQuery(String endpoint, String query) {
+            String session = DataFusionProvider.getSessionKey();
+            InFlightQuery inFlight = IN_FLIGHT_QUERIES.get(session);
+            if (inFlight != null && inFlight.endpoint.equals(endpoint) && inFlight.query.equals(query)) {
+                IN_FLIGHT_QUERIES.remove(session, inFlight);
+            }
+        }
+
+        // session key -> statement running on `endpoint`, removed so they won't be reported again for a later crash
+        public static Map<String, String> takeInFlightQueries(String endpoint) {
+            Map<String, String> queries = new TreeMap<>();
+            for (Map.Entry<String, InFlightQuery> entry : IN_FLIGHT_QUERIES.entrySet()) {
+                if (entry.getValue().endpoint.equals(endpoint)
+                        && IN_FLIGHT_QUERIES.remove(entry.getKey(), entry.getValue())) {
+                    queries.put(entry.getKey(), entry.getValue().query);
+                }
+            }
+            return queries;
+        }
+
+        private static final class InFlightQuery {
+            private final String endpoint;
+            private final String query;
+
+            InFlightQuery(String endpoint, String query) {
+                this.endpoint = endpoint;
+                this.query = query;
+            }
+        }
+
+        // Keep the same format as lines collected by `getReplay()` from log file
+        private static String toReplayLines(String header, String logContent) {
+            String content = logContent.endsWith("\n") ? logContent : logContent + "\n";
+            return header + content;
+        }
+
         public enum DataFusionLogType {
             ERROR, DML, SELECT
         }
     }
 
+    /*
+     * Process-wide sink for 'error_report.log'
+     *
+     * All fuzzer threads share one open channel. Records are queued lock-free, and whichever thread wins `draining`
+     * writes out everything queued so far, so each record lands in the file as a whole and records never interleave.
+     */
+    public static final class DataFusionErrorSink {
+        private static volatile DataFusionErrorSink instance;
+
+        private final FileChannel channel;
+        private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        private DataFusionErrorSink(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        // The first caller decides the file, all loggers use the same path anyway
+        public static DataFusionErrorSink getInstance(File file) throws IOException {
+            DataFusionErrorSink sink = instance;
+            if (sink == null) {
+                synchronized (DataFusionErrorSink.class) {
+                    sink = instance;
+                    if (sink == null) {
+                        sink = new DataFusionErrorSink(file);
+                        instance = sink;
+                    }
+                }
+            }
+            return sink;
+        }
+
+        public void append(String record) {
+            pending.add(ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8)));
+            drain();
+        }
+
+        private void drain() {
+            // Re-check after releasing: a record queued while we were writing may have lost the race for `draining`
+            while (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+                try {
+                    ByteBuffer record = pending.poll();
+                    while (record != null) {
+                        while (record.hasRemaining()) {
+                            channel.write(record);
+                        }
+                        record = pending.poll();
+                    }
+                } catch (IOException e) {
+                    dfAssert(false, "Failed to write to ERROR log: " + e.getMessage());
+                } finally {
+                    draining.set(false);
+                }
+            }
+        }
+    }
+
     // Only used in TLP-Having
     public static String cleanResultSetString(String value) {
         if (value == null) {
@@ -247,14 +247,17 @@ public class DataFusionSelect extends SelectBase<Node<DataFusionExpression>> imp
     // - [expr_groupby_cols] t1.v1 + 1
     // - [expr_aggr_cols] SUM(t3.v1 + t2.v1)
     public static DataFusionSelect getRandomSelect(DataFusionGlobalState state) {
+        return getRandomSelect(state, state.getSchema().getDatabaseTables());
+    }
+
+    // Same as `getRandomSelect(state)`, with tables of the FROM clause picked from `allTables` only
+    public static DataFusionSelect getRandomSelect(DataFusionGlobalState state, List<DataFusionTable> allTables) {
         DataFusionSelect randomSelect = new DataFusionSelect();
         if (Randomly.getBooleanWithRatherLowProbability()) {
             randomSelect.all = true;
         }
 
         /* Setup FROM clause */
-        DataFusionSchema schema = state.getSchema(); // schema of all tables
-        List<DataFusionTable> allTables = schema.getDatabaseTables();
         List<DataFusionTable> randomTables = Randomly.nonEmptySubset(allTables);
         int maxSize = Randomly.fromOptions(1, 2, 3);
         if (randomTables.size() > maxSize) {
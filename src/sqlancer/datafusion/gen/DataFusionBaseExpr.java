@@ -17,14 +17,16 @@ import sqlancer.datafusion.DataFusionSchema.DataFusionDataType;
     1. Add an enum variant to `DataFusionBaseExprType`
     2. Update `DataFusionBaseExprFactory.java`
     (If a function support different argument number, make a new entry for each one. e.g. round scalar function support round(3.14) / round(3.14, 1), so it should be enum FUNC_ROUND1, FUNC_ROUND2)
+
+    Each operator is only constructed once and then shared (see `DataFusionBaseExprFactory.getExpr()`), so all fields are final.
  */
 public class DataFusionBaseExpr implements Operator {
-    public String name;
-    public int nArgs; // number of input arguments
-    public DataFusionBaseExprCategory exprType;
-    public List<DataFusionDataType> possibleReturnTypes;
-    public List<ArgumentType> argTypes;
-    public boolean isVariadic; // Function supports arbitrary number of arguments, if set to `true`, it will
+    public final String name;
+    public final int nArgs; // number of input arguments
+    public final DataFusionBaseExprCategory exprType;
+    public final List<DataFusionDataType> possibleReturnTypes;
+    public final List<ArgumentType> argTypes;
+    public final boolean isVariadic; // Function supports arbitrary number of arguments, if set to `true`, it will
     // override `nArgs`
 
     // Primary constructor
@@ -4,7 +4,10 @@ import static sqlancer.datafusion.DataFusionUtil.dfAssert;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -15,11 +18,64 @@ import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprCategory;
 import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
 
 public final class DataFusionBaseExprFactory {
+    // `DataFusionBaseExpr`s are never modified after construction, so every operator is created only once
+    // (at class-init) and indexed by return type and category.
+    // Expression generation picks from these prebuilt lists instead of re-creating all operators for every node.
+    private static final Map<DataFusionBaseExprType, DataFusionBaseExpr> EXPRS_BY_TYPE = new EnumMap<>(
+            DataFusionBaseExprType.class);
+    private static final List<DataFusionBaseExpr> ALL_EXPRS;
+    // return type -> category -> exprs
+    private static final Map<DataFusionDataType, Map<DataFusionBaseExprCategory, List<DataFusionBaseExpr>>> EXPRS_BY_RETURN_TYPE = new EnumMap<>(
+            DataFusionDataType.class);
+    private static final Map<DataFusionDataType, List<DataFusionBaseExpr>> ALL_EXPRS_BY_RETURN_TYPE = new EnumMap<>(
+            DataFusionDataType.class);
+    private static final Map<DataFusionDataType, List<DataFusionBaseExpr>> NON_FUNC_EXPRS_BY_RETURN_TYPE = new EnumMap<>(
+            DataFusionDataType.class);
+    private static final List<DataFusionBaseExpr> AGGREGATE_EXPRS;
+
+    static {
+        List<DataFusionBaseExpr> allExprs = new ArrayList<>();
+        for (DataFusionBaseExprType type : DataFusionBaseExprType.values()) {
+            DataFusionBaseExpr expr = createExpr(type);
+            EXPRS_BY_TYPE.put(type, expr);
+            allExprs.add(expr);
+        }
+        ALL_EXPRS = Collections.unmodifiableList(allExprs);
+
+        for (DataFusionDataType returnType : DataFusionDataType.values()) {
+            Map<DataFusionBaseExprCategory, List<DataFusionBaseExpr>> byCategory = new EnumMap<>(
+                    DataFusionBaseExprCategory.class);
+            for (DataFusionBaseExprCategory category : DataFusionBaseExprCategory.values()) {
+                byCategory.put(category,
+                        Collections.unmodifiableList(allExprs.stream().filter(
+                                expr -> expr.exprType == category && expr.possibleReturnTypes.contains(returnType))
+                                .collect(Collectors.toList())));
+            }
+            EXPRS_BY_RETURN_TYPE.put(returnType, byCategory);
+
+            List<DataFusionBaseExpr> withReturnType = allExprs.stream()
+                    .filter(expr -> expr.possibleReturnTypes.contains(returnType)).collect(Collectors.toList());
+            ALL_EXPRS_BY_RETURN_TYPE.put(returnType, Collections.unmodifiableList(withReturnType));
+            NON_FUNC_EXPRS_BY_RETURN_TYPE.put(returnType, Collections.unmodifiableList(withReturnType.stream()
+                    .filter(expr -> expr.exprType != DataFusionBaseExprCategory.FUNC).collect(Collectors.toList())));
+        }
+
+        AGGREGATE_EXPRS = Collections.unmodifiableList(allExprs.stream()
+                .filter(expr -> expr.exprType == DataFusionBaseExprCategory.AGGREGATE).collect(Collectors.toList()));
+    }
+
     private DataFusionBaseExprFactory() {
         dfAssert(false, "Utility class cannot be instantiated");
     }
 
-    public static DataFusionBaseExpr createExpr(DataFusionBaseExprType type) {
+    // Return the shared (prebuilt) instance of `type`
+    public static DataFusionBaseExpr getExpr(DataFusionBaseExprType type) {
+        return EXPRS_BY_TYPE.get(type);
+    }
+
+    // Construct a new `DataFusionBaseExpr`, only used to build the index above.
+    // Use `getExpr()` to get an operator instead.
+    static DataFusionBaseExpr createExpr(DataFusionBaseExprType type) {
         switch (type) {
         case IS_NULL:
             return new DataFusionBaseExpr("IS NULL", 1, DataFusionBaseExprCategory.UNARY_POSTFIX,
@@ -784,32 +840,48 @@ public final class DataFusionBaseExprFactory {
 
     // if input is Optional.empty(), return all possible `DataFusionBaseExpr`s
     // else, return all `DataFusionBaseExpr` which might be evaluated to arg's type
+    // Returned lists are shared and unmodifiable
     public static List<DataFusionBaseExpr> getExprsWithReturnType(Optional<DataFusionDataType> dataTypeOptional) {
-        List<DataFusionBaseExpr> allExpressions = Arrays.stream(DataFusionBaseExprType.values())
-                .map(DataFusionBaseExprFactory::createExpr).collect(Collectors.toList());
-
         if (!dataTypeOptional.isPresent()) {
-            return allExpressions; // If Optional is empty, return all expressions
+            return ALL_EXPRS; // If Optional is empty, return all expressions
         }
 
-        DataFusionDataType filterType = dataTypeOptional.get();
-        List<DataFusionBaseExpr> exprsWithReturnType = allExpressions.stream()
-                .filter(expr -> expr.possibleReturnTypes.contains(filterType)).collect(Collectors.toList());
-
         if (Randomly.getBoolean()) {
             // Too many similar function, so test them less often
-            return exprsWithReturnType;
+            return ALL_EXPRS_BY_RETURN_TYPE.get(dataTypeOptional.get());
         }
 
-        return exprsWithReturnType.stream().filter(expr -> expr.exprType != DataFusionBaseExprCategory.FUNC)
-                .collect(Collectors.toList());
+        return NON_FUNC_EXPRS_BY_RETURN_TYPE.get(dataTypeOptional.get());
     }
 
-    public static DataFusionBaseExpr getRandomAggregateExpr() {
-        List<DataFusionBaseExpr> allAggrExpressions = Arrays.stream(DataFusionBaseExprType.values())
-                .map(DataFusionBaseExprFactory::createExpr)
-                .filter(expr -> expr.exprType == DataFusionBaseExprCategory.AGGREGATE).collect(Collectors.toList());
+    // Uniformly pick one `DataFusionBaseExpr` which might be evaluated to `returnType`, among all exprs in
+    // `categories`. Return null if there is no such expr.
+    // No list is allocated: the index is computed over the prebuilt per-category lists.
+    public static DataFusionBaseExpr getRandomExprWithReturnType(DataFusionDataType returnType,
+            DataFusionBaseExprCategory... categories) {
+        Map<DataFusionBaseExprCategory, List<DataFusionBaseExpr>> byCategory = EXPRS_BY_RETURN_TYPE.get(returnType);
+        int total = 0;
+        for (DataFusionBaseExprCategory category : categories) {
+            total += byCategory.get(category).size();
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        int index = (int) Randomly.getNotCachedInteger(0, total);
+        for (DataFusionBaseExprCategory category : categories) {
+            List<DataFusionBaseExpr> exprs = byCategory.get(category);
+            if (index < exprs.size()) {
+                return exprs.get(index);
+            }
+            index -= exprs.size();
+        }
 
-        return Randomly.fromList(allAggrExpressions);
+        dfAssert(false, "Unreachable. Index should be within all candidate exprs");
+        return null;
+    }
+
+    public static DataFusionBaseExpr getRandomAggregateExpr() {
+        return Randomly.fromList(AGGREGATE_EXPRS);
     }
 }
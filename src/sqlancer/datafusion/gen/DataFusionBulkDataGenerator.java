@@ -0,0 +1,181 @@
+package sqlancer.datafusion.gen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.BitVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.driver.jdbc.shaded.org.apache.arrow.vector.types.pojo.Schema;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.common.query.ExpectedErrors;
+import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionSchema.DataFusionColumn;
+import sqlancer.datafusion.DataFusionSchema.DataFusionDataType;
+import sqlancer.datafusion.DataFusionSchema.DataFusionTable;
+
+/*
+ * Bulk data mode (`--bulk-rows N`), instead of one `INSERT` per row
+ *
+ * Generate random rows for a base table column by column, write them to an Arrow IPC file under `--bulk-data-dir`,
+ * and load it into DataFusion with:
+ *
+ * CREATE EXTERNAL TABLE t1_arrow STORED AS ARROW LOCATION '.../t1.arrow';
+ * INSERT INTO t1 SELECT * FROM t1_arrow;
+ *
+ * `t1_arrow` is kept as an equivalent table of `t1` (file scan vs. memory table).
+ *
+ * Value distribution is the same as `DataFusionDataType.getRandomConstant()`. The data directory must be readable
+ * by the DataFusion server (i.e. local or shared filesystem).
+ */
+public final class DataFusionBulkDataGenerator {
+    private static final int BATCH_ROWS = 8192;
+
+    private DataFusionBulkDataGenerator() {
+    }
+
+    public static List<SQLQueryAdapter> getLoadQueries(DataFusionGlobalState globalState, DataFusionTable table) {
+        int rows = globalState.getRandomly().getInteger(0, globalState.getDbmsSpecificOptions().bulkRows + 1);
+        File dir = getDataDirectory(globalState);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IgnoreMeException();
+        }
+        File file = new File(dir, table.getName() + ".arrow");
+        try {
+            writeArrowFile(globalState, table.getColumns(), rows, file);
+        } catch (IOException e) {
+            throw new AssertionError("Failed to write bulk data to " + file, e);
+        }
+
+        String externalTable = table.getName() + "_arrow";
+        ExpectedErrors errors = new ExpectedErrors();
+        return Arrays.asList(
+                new SQLQueryAdapter("CREATE EXTERNAL TABLE " + externalTable + " STORED AS ARROW LOCATION '"
+                        + file.getPath() + "';", errors, true),
+                new SQLQueryAdapter("INSERT INTO " + table.getName() + " SELECT * FROM " + externalTable + ";",
+                        errors));
+    }
+
+    // Data files of current database, written here or by the server (e.g. `t1_parquet`)
+    public static File getDataDirectory(DataFusionGlobalState globalState) {
+        return new File(globalState.getDbmsSpecificOptions().bulkDataDir, globalState.getDatabaseName())
+                .getAbsoluteFile();
+    }
+
+    // Best effort: files written by the server may not be deletable by SQLancer
+    public static void deleteDataFiles(DataFusionGlobalState globalState) {
+        Path dir = getDataDirectory(globalState).toPath();
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException | UncheckedIOException e) {
+            if (globalState.getDbmsSpecificOptions().showDebugInfo) {
+                System.out.println("Failed to delete data files under " + dir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeArrowFile(DataFusionGlobalState globalState, List<DataFusionColumn> columns, int rows,
+            File file) throws IOException {
+        List<Field> fields = new ArrayList<>();
+        for (DataFusionColumn column : columns) {
+            fields.add(new Field(column.getName(), FieldType.nullable(toArrowType(column.getType())), null));
+        }
+
+        try (BufferAllocator allocator = new RootAllocator();
+                VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+                FileOutputStream out = new FileOutputStream(file);
+                ArrowFileWriter writer = new ArrowFileWriter(root, null, out.getChannel())) {
+            writer.start();
+            for (int written = 0; written < rows; written += BATCH_ROWS) {
+                int batchRows = Math.min(BATCH_ROWS, rows - written);
+                root.allocateNew();
+                for (int i = 0; i < columns.size(); i++) {
+                    fillColumn(globalState, columns.get(i).getType(), root.getVector(i), batchRows);
+                }
+                root.setRowCount(batchRows);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+    }
+
+    private static ArrowType toArrowType(DataFusionDataType type) {
+        switch (type) {
+        case BIGINT:
+            return new ArrowType.Int(64, true);
+        case DOUBLE:
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        case BOOLEAN:
+            return ArrowType.Bool.INSTANCE;
+        case STRING:
+            return ArrowType.Utf8.INSTANCE;
+        default:
+            throw new AssertionError("Unsupported column type for bulk data: " + type);
+        }
+    }
+
+    // Same distribution as `DataFusionDataType.getRandomConstant()`, without building AST nodes
+    private static void fillColumn(DataFusionGlobalState globalState, DataFusionDataType type, FieldVector vector,
+            int rows) {
+        Randomly r = globalState.getRandomly();
+        for (int i = 0; i < rows; i++) {
+            if (Randomly.getBooleanWithSmallProbability()) {
+                vector.setNull(i);
+                continue;
+            }
+            switch (type) {
+            case BIGINT:
+                ((BigIntVector) vector).setSafe(i, Randomly.getBoolean() ? r.getInteger() : r.getInteger(-5, 5));
+                break;
+            case DOUBLE:
+                ((Float8Vector) vector).setSafe(i, getRandomDouble(r));
+                break;
+            case BOOLEAN:
+                ((BitVector) vector).setSafe(i, Randomly.getBoolean() ? 1 : 0);
+                break;
+            case STRING:
+                ((VarCharVector) vector).setSafe(i, r.getString().getBytes(StandardCharsets.UTF_8));
+                break;
+            default:
+                throw new AssertionError("Unsupported column type for bulk data: " + type);
+            }
+        }
+    }
+
+    private static double getRandomDouble(Randomly r) {
+        if (Randomly.getBoolean()) {
+            if (Randomly.getBoolean()) {
+                return (r.getDouble() - 0.5) * 2 * Double.MAX_VALUE;
+            }
+            return Randomly.fromOptions(Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, +0.0);
+        }
+
+        return r.getDouble();
+    }
+}
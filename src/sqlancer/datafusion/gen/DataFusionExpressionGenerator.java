@@ -1,13 +1,12 @@
 package sqlancer.datafusion.gen;
 
 import static sqlancer.datafusion.DataFusionUtil.dfAssert;
-import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.createExpr;
-import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExprsWithReturnType;
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExpr;
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getRandomExprWithReturnType;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 import sqlancer.Randomly;
@@ -31,6 +30,22 @@ import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
 public final class DataFusionExpressionGenerator
         extends TypedExpressionGenerator<Node<DataFusionExpression>, DataFusionColumn, DataFusionDataType> {
 
+    // Candidate `DataFusionBaseExpr` categories (see `getCandidateCategories()`)
+    private static final DataFusionBaseExprCategory[] AGGREGATE_CATEGORIES = { DataFusionBaseExprCategory.AGGREGATE };
+    private static final DataFusionBaseExprCategory[] AGGREGATE_OR_WINDOW_CATEGORIES = {
+            DataFusionBaseExprCategory.AGGREGATE, DataFusionBaseExprCategory.WINDOW };
+    private static final DataFusionBaseExprCategory[] ALL_CATEGORIES = DataFusionBaseExprCategory.values();
+    private static final DataFusionBaseExprCategory[] ALL_CATEGORIES_EXCEPT_FUNC = {
+            DataFusionBaseExprCategory.UNARY_PREFIX, DataFusionBaseExprCategory.UNARY_POSTFIX,
+            DataFusionBaseExprCategory.BINARY, DataFusionBaseExprCategory.AGGREGATE,
+            DataFusionBaseExprCategory.WINDOW };
+    private static final DataFusionBaseExprCategory[] NON_AGGREGATE_CATEGORIES = {
+            DataFusionBaseExprCategory.UNARY_PREFIX, DataFusionBaseExprCategory.UNARY_POSTFIX,
+            DataFusionBaseExprCategory.BINARY, DataFusionBaseExprCategory.FUNC };
+    private static final DataFusionBaseExprCategory[] NON_AGGREGATE_CATEGORIES_EXCEPT_FUNC = {
+            DataFusionBaseExprCategory.UNARY_PREFIX, DataFusionBaseExprCategory.UNARY_POSTFIX,
+            DataFusionBaseExprCategory.BINARY };
+
     private final DataFusionGlobalState globalState;
     public boolean supportAggregate; // control if generate aggr exprs, related logic is in `generateExpression()`
     public boolean supportWindow; // control if generate window exprs, related logic is in `generateExpression()`
@@ -60,26 +75,27 @@ public final class DataFusionExpressionGenerator
     // Since randomly generated expressions are nested:
     // For window/aggregate case, we want only outer layer to be window/aggr
     // to make it more likely to generate valid query
-    private boolean filterBaseExpr(DataFusionBaseExpr expr, DataFusionDataType type, int depth) {
+    private DataFusionBaseExprCategory[] getCandidateCategories(DataFusionDataType type, int depth) {
+        // Too many similar function, so test them less often
+        boolean includeFunc = Randomly.getBoolean();
+
         // keep only aggregates
         if (supportAggregate && depth == 0 && type.isNumeric() && Randomly.getBoolean()) {
-            return expr.exprType == DataFusionBaseExpr.DataFusionBaseExprCategory.AGGREGATE;
+            return AGGREGATE_CATEGORIES;
         }
 
         // keep only window (aggregate function can also be used in window clause)
         if (supportWindow && depth == 0 && type.isNumeric() && Randomly.getBoolean()) {
-            return expr.exprType == DataFusionBaseExpr.DataFusionBaseExprCategory.AGGREGATE
-                    || expr.exprType == DataFusionBaseExprCategory.WINDOW;
+            return AGGREGATE_OR_WINDOW_CATEGORIES;
         }
 
         // keep all avaialble expressions (aggr + non-aggr)
         if (Randomly.getBooleanWithRatherLowProbability()) {
-            return true;
+            return includeFunc ? ALL_CATEGORIES : ALL_CATEGORIES_EXCEPT_FUNC;
         }
 
         // keep all non-aggregate exprs
-        return expr.exprType != DataFusionBaseExprCategory.AGGREGATE
-                && expr.exprType != DataFusionBaseExprCategory.WINDOW;
+        return includeFunc ? NON_AGGREGATE_CATEGORIES : NON_AGGREGATE_CATEGORIES_EXCEPT_FUNC;
     }
 
     // By default all possible non-aggregate expressions
@@ -95,28 +111,13 @@ public final class DataFusionExpressionGenerator
             return generateLeafNode(expectedType);
         }
 
-        List<DataFusionBaseExpr> possibleBaseExprs = getExprsWithReturnType(Optional.of(type)).stream()
-                .filter(expr -> filterBaseExpr(expr, type, depth)).collect(Collectors.toList());
+        DataFusionBaseExpr randomExpr = getRandomExprWithReturnType(type, getCandidateCategories(type, depth));
 
-        if (possibleBaseExprs.isEmpty()) {
+        if (randomExpr == null) {
             dfAssert(type == DataFusionDataType.NULL, "should able to generate expression with type " + type);
             return generateLeafNode(type);
         }
 
-        DataFusionBaseExpr randomExpr = Randomly.fromList(possibleBaseExprs);
-
-        // if (randomExpr.exprType == DataFusionBaseExprCategory.AGGREGATE ||
-        // randomExpr.exprType ==
-        // DataFusionBaseExprCategory.WINDOW) {
-        // if (depth == 0) {
-        // System.out.println("DBG depth 0");
-        // System.out.println(possibleBaseExprs);
-        // } else {
-        // System.out.println("DBG depth NOT 0");
-        // System.out.println(possibleBaseExprs);
-        // }
-        // }
-
         switch (randomExpr.exprType) {
         case UNARY_PREFIX:
             DataFusionDataType argType = null;
@@ -329,12 +330,12 @@ public final class DataFusionExpressionGenerator
 
     @Override
     public Node<DataFusionExpression> negatePredicate(Node<DataFusionExpression> predicate) {
-        return new NewUnaryPrefixOperatorNode<>(predicate, createExpr(DataFusionBaseExprType.NOT));
+        return new NewUnaryPrefixOperatorNode<>(predicate, getExpr(DataFusionBaseExprType.NOT));
     }
 
     @Override
     public Node<DataFusionExpression> isNull(Node<DataFusionExpression> expr) {
-        return new NewUnaryPostfixOperatorNode<>(expr, createExpr(DataFusionBaseExprType.IS_NULL));
+        return new NewUnaryPostfixOperatorNode<>(expr, getExpr(DataFusionBaseExprType.IS_NULL));
     }
 
     // TODO(datafusion) refactor: make single generate aware of group by and aggr
@@ -1,6 +1,11 @@
 package sqlancer.datafusion.gen;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import sqlancer.Randomly;
 import sqlancer.common.query.ExpectedErrors;
@@ -72,4 +77,121 @@ public class DataFusionTableGenerator {
         return Optional.of(new SQLQueryAdapter(sb.toString(), new ExpectedErrors(), true));
     }
 
+    // Given a table t1, return create statement to generate t1_dict
+    // If t1 has no string column, return empty
+    //
+    // Query looks like (only v2 is TEXT column):
+    // create table t1_dict as
+    // select v1, arrow_cast(v2, 'Dictionary(Int32, Utf8)') as v2 from t1;
+    public Optional<SQLQueryAdapter> createDictionaryTable(DataFusionGlobalState globalState, DataFusionTable table) {
+        if (!table.getColumns().stream().anyMatch(c -> c.getType().equals(DataFusionDataType.STRING))) {
+            return Optional.empty();
+        }
+
+        String columns = table.getColumns().stream()
+                .map(c -> c.getType().equals(DataFusionDataType.STRING)
+                        ? "arrow_cast(" + c.getName() + ", 'Dictionary(Int32, Utf8)') as " + c.getName() : c.getName())
+                .collect(Collectors.joining(", "));
+        String query = "CREATE TABLE " + table.getName() + "_dict AS SELECT " + columns + " FROM " + table.getName()
+                + ";";
+
+        return Optional.of(new SQLQueryAdapter(query, new ExpectedErrors(), true));
+    }
+
+    // Given a table t1, return create statement to generate t1_partitioned: a memory table whose rows are split into
+    // several partitions (some can be empty), so scans of it run in parallel and feed repartition/merge operators
+    //
+    // Each branch of `UNION ALL` becomes one partition of the table. Rows are dealt round-robin by their row number
+    // in the order of all columns, so the partitions only depend on row values (equal rows are interchangeable), not on
+    // the scan order of t1 or on the plan.
+    //
+    // Query looks like (split into 3 partitions):
+    // create table t1_partitioned as
+    // select v0, v1 from (select *, row_number() over (order by v0, v1) as rn from t1) where rn % 3 = 0 union all
+    // select v0, v1 from (select *, row_number() over (order by v0, v1) as rn from t1) where rn % 3 = 1 union all
+    // select v0, v1 from (select *, row_number() over (order by v0, v1) as rn from t1) where rn % 3 = 2;
+    public SQLQueryAdapter createPartitionedTable(DataFusionGlobalState globalState, DataFusionTable table) {
+        int partitions = Randomly.fromOptions(2, 3, 7, 16);
+        String columns = table.getColumns().stream().map(DataFusionColumn::getName).collect(Collectors.joining(", "));
+
+        List<String> slices = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            slices.add("SELECT " + columns + " FROM (SELECT *, ROW_NUMBER() OVER (ORDER BY " + columns + ") AS rn FROM "
+                    + table.getName() + ") WHERE rn % " + partitions + " = " + i);
+        }
+        String query = "CREATE TABLE " + table.getName() + "_partitioned AS " + String.join(" UNION ALL ", slices)
+                + ";";
+
+        return new SQLQueryAdapter(query, new ExpectedErrors(), true);
+    }
+
+    // Given a table t1, return statements to generate t1_parquet: the same rows written by the server into a Parquet
+    // file under `--bulk-data-dir`, with a layout that makes scans prune (or fail to prune) a lot:
+    // - rows sorted on random columns, so row group and page min/max statistics are selective
+    // - tiny row groups and pages, with page index, and sometimes bloom filters
+    // and read with random filter pushdown settings.
+    //
+    // Queries look like:
+    // COPY (SELECT * FROM t1 ORDER BY v1, v0) TO '.../t1.parquet' STORED AS PARQUET
+    // OPTIONS ('format.max_row_group_size' '8', ...);
+    // CREATE EXTERNAL TABLE t1_parquet(v0 BIGINT, v1 STRING) STORED AS PARQUET LOCATION '.../t1.parquet'
+    // OPTIONS ('format.pushdown_filters' 'true', ...);
+    public List<SQLQueryAdapter> createParquetTable(DataFusionGlobalState globalState, DataFusionTable table) {
+        File file = getDataFile(globalState, table.getName() + ".parquet");
+        String sortColumns = Randomly.nonEmptySubset(table.getColumns()).stream().map(DataFusionColumn::getName)
+                .collect(Collectors.joining(", "));
+        int pageRows = Randomly.fromOptions(1, 3, 16);
+        String copy = "COPY (SELECT * FROM " + table.getName() + " ORDER BY " + sortColumns + ") TO '" + file.getPath()
+                + "' STORED AS PARQUET OPTIONS (" + "'format.max_row_group_size' '" + Randomly.fromOptions(2, 7, 64)
+                + "', " + "'format.data_page_row_count_limit' '" + pageRows + "', " + "'format.write_batch_size' '"
+                + pageRows + "', " + "'format.statistics_enabled' 'page', " + "'format.bloom_filter_on_write' '"
+                + Randomly.getBoolean() + "');";
+
+        boolean pushdownFilters = Randomly.getBoolean();
+        String create = "CREATE EXTERNAL TABLE " + table.getName() + "_parquet(" + getColumnDefinitions(table)
+                + ") STORED AS PARQUET " + "LOCATION '" + file.getPath() + "' OPTIONS (" + "'format.pushdown_filters' '"
+                + pushdownFilters + "', " + "'format.reorder_filters' '" + (pushdownFilters && Randomly.getBoolean())
+                + "', " + "'format.enable_page_index' 'true', " + "'format.bloom_filter_on_read' 'true');";
+
+        ExpectedErrors errors = new ExpectedErrors();
+        return Arrays.asList(new SQLQueryAdapter(copy, errors), new SQLQueryAdapter(create, errors, true));
+    }
+
+    // Given a table t1, return statements to generate t1_sorted: the same rows written by the server into a Parquet
+    // file physically ordered on random columns, with that order declared by `WITH ORDER`. Knowing the order, the
+    // planner removes sorts, and uses streaming aggregates and sort-merge joins without sorting first.
+    // The file is deleted with the other data files of the database (see `DataFusionProvider`).
+    //
+    // Queries look like:
+    // COPY (SELECT * FROM t1 ORDER BY v1 DESC NULLS FIRST, v0 ASC NULLS LAST) TO '.../t1_sorted.parquet'
+    // STORED AS PARQUET OPTIONS ('format.max_row_group_size' '4');
+    // CREATE EXTERNAL TABLE t1_sorted(v0 BIGINT, v1 STRING) STORED AS PARQUET
+    // WITH ORDER (v1 DESC NULLS FIRST, v0 ASC NULLS LAST) LOCATION '.../t1_sorted.parquet';
+    public List<SQLQueryAdapter> createSortedTable(DataFusionGlobalState globalState, DataFusionTable table) {
+        File file = getDataFile(globalState, table.getName() + "_sorted.parquet");
+        String ordering = Randomly
+                .nonEmptySubset(table.getColumns()).stream().map(c -> c.getName()
+                        + Randomly.fromOptions(" ASC", " DESC") + Randomly.fromOptions(" NULLS FIRST", " NULLS LAST"))
+                .collect(Collectors.joining(", "));
+        // Several row groups, so the file can be scanned by several partitions
+        String copy = "COPY (SELECT * FROM " + table.getName() + " ORDER BY " + ordering + ") TO '" + file.getPath()
+                + "' STORED AS PARQUET OPTIONS ('format.max_row_group_size' '" + Randomly.fromOptions(4, 1024) + "');";
+        String create = "CREATE EXTERNAL TABLE " + table.getName() + "_sorted(" + getColumnDefinitions(table)
+                + ") STORED AS PARQUET WITH ORDER (" + ordering + ") LOCATION '" + file.getPath() + "';";
+
+        ExpectedErrors errors = new ExpectedErrors();
+        return Arrays.asList(new SQLQueryAdapter(copy, errors), new SQLQueryAdapter(create, errors, true));
+    }
+
+    // Files written by the server for the tables of current database
+    private static File getDataFile(DataFusionGlobalState globalState, String fileName) {
+        return new File(DataFusionBulkDataGenerator.getDataDirectory(globalState), fileName);
+    }
+
+    // e.g. "v0 BIGINT, v1 STRING"
+    // Schemas of external tables are declared: an inferred one would read strings as Utf8View
+    private static String getColumnDefinitions(DataFusionTable table) {
+        return table.getColumns().stream().map(c -> c.getName() + " " + c.getType()).collect(Collectors.joining(", "));
+    }
+
 }
@@ -2,6 +2,7 @@ use arrow::array::{ArrayRef, StringArray};
 use arrow::ipc::writer::IpcWriteOptions;
 use arrow::record_batch::RecordBatch;
 use arrow_flight::encode::FlightDataEncoderBuilder;
+use arrow_flight::error::FlightError;
 use arrow_flight::flight_descriptor::DescriptorType;
 use arrow_flight::flight_service_server::{FlightService, FlightServiceServer};
 use arrow_flight::sql::server::{FlightSqlService, PeekableFlightDataStream};
@@ -14,17 +15,24 @@ use arrow_flight::{
     Action, FlightDescriptor, FlightEndpoint, FlightInfo, HandshakeRequest, HandshakeResponse,
     IpcMessage, SchemaAsIpc, Ticket,
 };
-use arrow_schema::{DataType, Field, Schema};
+use arrow_schema::{DataType, Field, Schema, SchemaRef};
 use dashmap::DashMap;
+use datafusion::execution::memory_pool::MemoryPool;
+use datafusion::execution::runtime_env::RuntimeEnvBuilder;
+use datafusion::execution::session_state::SessionStateBuilder;
 use datafusion::logical_expr::LogicalPlan;
+use datafusion::physical_plan::SendableRecordBatchStream;
+use datafusion::physical_plan::stream::RecordBatchStreamAdapter;
 use datafusion::prelude::{DataFrame, SessionConfig, SessionContext};
 use futures::{Stream, StreamExt, TryStreamExt};
 use log::info;
 use mimalloc::MiMalloc;
+use parking_lot::Mutex;
 use prost::Message;
+use serde::Serialize;
 use std::pin::Pin;
 use std::sync::Arc;
-use tokio::sync::Mutex;
+use std::time::{Duration, Instant};
 use tonic::metadata::MetadataValue;
 use tonic::transport::Server;
 use tonic::{Request, Response, Status, Streaming};
@@ -33,6 +41,18 @@ use uuid::Uuid;
 #[global_allocator]
 static GLOBAL: MiMalloc = MiMalloc;
 
+/// Results not fetched by `do_get` within this time are considered abandoned (e.g. client
+/// crashed between `GetFlightInfo` and `DoGet`) and get dropped by the sweeper
+const RESULT_TTL: Duration = Duration::from_secs(300);
+const RESULT_SWEEP_INTERVAL: Duration = Duration::from_secs(60);
+
+/// Custom action returning the `QueryMetrics` of the caller's context
+const QUERY_METRICS_ACTION: &str = "query_metrics";
+
+/// Partitions of memory-limited contexts: each sort partition takes its own merge
+/// reservation from the pool, so the default (CPU count) could use up a small pool
+const MEMORY_LIMITED_TARGET_PARTITIONS: usize = 2;
+
 macro_rules! status {
     ($desc:expr, $err:expr) => {
         Status::internal(format!("{}: {} at {}:{}", $desc, $err, file!(), line!()))
@@ -45,9 +65,12 @@ macro_rules! status {
 ///     CREATE
 ///     INSERT
 ///     SELECT
+/// Custom actions:
+///     query_metrics (see `QueryMetrics`)
 ///
-/// Only single client is supported
-/// For now use `ctx` instead of `contexts` inside `FlightSqlServiceImpl`
+/// Each handshake (i.e. each JDBC connection) gets its own `SessionContext`, keyed by the
+/// bearer token returned to the client, so multiple SQLancer threads can run queries
+/// concurrently without sharing tables or waiting on each other.
 ///
 /// === Below origianl comment ===
 ///
@@ -67,16 +90,15 @@ macro_rules! status {
 #[tokio::main]
 async fn main() -> Result<(), Box<dyn std::error::Error>> {
     env_logger::init();
-    let addr = "0.0.0.0:50051".parse()?;
-    let session_ctx = SessionContext::new_with_config(
-        SessionConfig::new().with_information_schema(true), // enable catalog
-    );
+    let addr = format!("0.0.0.0:{}", parse_port()?).parse()?;
     let service = FlightSqlServiceImpl {
         contexts: Default::default(),
+        sessions: Default::default(),
         statements: Default::default(),
         results: Default::default(),
-        ctx: Arc::new(Mutex::new(session_ctx)),
+        metrics: Default::default(),
     };
+    tokio::spawn(sweep_abandoned_results(service.results.clone()));
     info!("Listening on {addr:?}");
     let svc = FlightServiceServer::new(service);
 
@@ -85,11 +107,170 @@ async fn main() -> Result<(), Box<dyn std::error::Error>> {
     Ok(())
 }
 
+/// Usage: `datafusion-server [--port <port>]`, listens on port 50051 by default
+/// (SQLancer's `--spawn-servers` launches several servers on consecutive ports)
+fn parse_port() -> Result<u16, Box<dyn std::error::Error>> {
+    let args: Vec<String> = std::env::args().collect();
+    match args.iter().position(|arg| arg == "--port") {
+        Some(i) => Ok(args.get(i + 1).ok_or("Missing value for --port")?.parse()?),
+        None => Ok(50051),
+    }
+}
+
+/// Evict results whose handle was never fetched, so they don't accumulate over a long run
+async fn sweep_abandoned_results(results: Arc<DashMap<String, PendingResult>>) {
+    let mut interval = tokio::time::interval(RESULT_SWEEP_INTERVAL);
+    loop {
+        interval.tick().await;
+        results.retain(|handle, result| {
+            let alive = result.created.elapsed() < RESULT_TTL;
+            if !alive {
+                info!("Dropping abandoned result {handle}");
+            }
+            alive
+        });
+    }
+}
+
+/// Query result waiting to be fetched by `do_get`
+///
+/// Only the first batch is computed eagerly (so that most execution errors are still reported
+/// by `GetFlightInfo`, i.e. `executeQuery()` on client side), the rest is streamed to the client
+/// from the execution stream.
+struct PendingResult {
+    schema: SchemaRef,
+    first: Option<RecordBatch>,
+    // Mutex only to make it `Sync`, it's accessed once after being removed from `results`
+    rest: Mutex<SendableRecordBatchStream>,
+    created: Instant,
+    // None for results not computed by a query (e.g. table list)
+    run: Option<QueryRun>,
+}
+
+impl PendingResult {
+    async fn try_new(
+        mut stream: SendableRecordBatchStream,
+        mut run: QueryRun,
+    ) -> Result<Self, Status> {
+        let schema = stream.schema();
+        let first = stream.next().await.transpose();
+        run.finished = Instant::now();
+        let first = first.map_err(|e| status!("Error executing query", e))?;
+        if let Some(batch) = &first {
+            run.record(batch);
+        }
+        Ok(Self {
+            schema,
+            first,
+            rest: Mutex::new(stream),
+            created: Instant::now(),
+            run: Some(run),
+        })
+    }
+
+    fn from_batch(batch: RecordBatch) -> Self {
+        let schema = batch.schema();
+        let empty = futures::stream::empty::<datafusion::error::Result<RecordBatch>>();
+        Self {
+            schema: schema.clone(),
+            first: Some(batch),
+            rest: Mutex::new(Box::pin(RecordBatchStreamAdapter::new(schema, empty))),
+            created: Instant::now(),
+            run: None,
+        }
+    }
+}
+
+/// Engine side cost of the queries of a context, served as JSON by the `query_metrics` action,
+/// so SQLancer can tell the time spent in DataFusion from its own overhead (network, Arrow to
+/// JDBC conversion, comparing results)
+#[derive(Clone, Default, Serialize)]
+struct QueryMetrics {
+    // Last finished query of the context (the latest one to finish, if they run concurrently)
+    planning_ns: u64,
+    execution_ns: u64,
+    output_bytes: u64,
+    // Max memory reserved in the memory pool of the context, sampled at each output batch
+    peak_memory_bytes: u64,
+    // All queries of the context so far, clients take the difference of two calls
+    queries: u64,
+    total_planning_ns: u64,
+    total_execution_ns: u64,
+    total_output_bytes: u64,
+}
+
+/// Execution of one query, added to the `QueryMetrics` of its context when dropped (i.e. once
+/// its result is fully streamed, or failed, or abandoned)
+struct QueryRun {
+    metrics: Arc<DashMap<String, QueryMetrics>>,
+    token: String,
+    planning: Duration,
+    started: Instant,
+    // when the last batch was produced
+    finished: Instant,
+    output_bytes: u64,
+    peak_memory_bytes: u64,
+    memory_pool: Arc<dyn MemoryPool>,
+}
+
+impl QueryRun {
+    fn new(
+        metrics: Arc<DashMap<String, QueryMetrics>>,
+        token: String,
+        planning: Duration,
+        ctx: &SessionContext,
+    ) -> Self {
+        let now = Instant::now();
+        Self {
+            metrics,
+            token,
+            planning,
+            started: now,
+            finished: now,
+            output_bytes: 0,
+            peak_memory_bytes: 0,
+            memory_pool: ctx.runtime_env().memory_pool.clone(),
+        }
+    }
+
+    fn record(&mut self, batch: &RecordBatch) {
+        self.finished = Instant::now();
+        self.output_bytes += batch.get_array_memory_size() as u64;
+        self.peak_memory_bytes = self
+            .peak_memory_bytes
+            .max(self.memory_pool.reserved() as u64);
+    }
+}
+
+impl Drop for QueryRun {
+    fn drop(&mut self) {
+        // A context dropped in the meantime has no entry anymore, and doesn't get one back
+        if let Some(mut metrics) = self.metrics.get_mut(&self.token) {
+            let planning_ns = self.planning.as_nanos() as u64;
+            let execution_ns = self.finished.duration_since(self.started).as_nanos() as u64;
+            metrics.planning_ns = planning_ns;
+            metrics.execution_ns = execution_ns;
+            metrics.output_bytes = self.output_bytes;
+            metrics.peak_memory_bytes = self.peak_memory_bytes;
+            metrics.queries += 1;
+            metrics.total_planning_ns += planning_ns;
+            metrics.total_execution_ns += execution_ns;
+            metrics.total_output_bytes += self.output_bytes;
+        }
+    }
+}
+
 pub struct FlightSqlServiceImpl {
+    // bearer token -> context created at handshake
     contexts: Arc<DashMap<String, Arc<SessionContext>>>,
-    statements: Arc<DashMap<String, LogicalPlan>>,
-    results: Arc<DashMap<String, Vec<RecordBatch>>>,
-    ctx: Arc<Mutex<SessionContext>>,
+    // client session (SQLancer thread) -> bearer token of its latest handshake
+    sessions: Arc<DashMap<String, String>>,
+    // plan handle -> (optimized plan, time spent planning it)
+    statements: Arc<DashMap<String, (LogicalPlan, Duration)>>,
+    // result handle -> result not yet fetched (removed once `do_get` takes it)
+    results: Arc<DashMap<String, PendingResult>>,
+    // bearer token -> metrics of the queries run in its context
+    metrics: Arc<DashMap<String, QueryMetrics>>,
 }
 
 impl FlightSqlServiceImpl {
@@ -101,10 +282,12 @@ impl FlightSqlServiceImpl {
         let ctx = Arc::new(SessionContext::new_with_config(session_config));
 
         self.contexts.insert(uuid.clone(), ctx);
+        self.metrics.insert(uuid.clone(), QueryMetrics::default());
         Ok(uuid)
     }
 
-    fn get_ctx<T>(&self, req: &Request<T>) -> Result<Arc<SessionContext>, Status> {
+    /// Bearer token of the request, i.e. the handle of its context
+    fn get_token<T>(&self, req: &Request<T>) -> Result<String, Status> {
         // get the token from the authorization header on Request
         let auth = req
             .metadata()
@@ -118,8 +301,11 @@ impl FlightSqlServiceImpl {
         if !authorization.starts_with(bearer) {
             Err(Status::internal("Invalid auth header!"))?;
         }
-        let auth = authorization[bearer.len()..].to_string();
+        Ok(authorization[bearer.len()..].to_string())
+    }
 
+    fn get_ctx<T>(&self, req: &Request<T>) -> Result<Arc<SessionContext>, Status> {
+        let auth = self.get_token(req)?;
         if let Some(context) = self.contexts.get(&auth) {
             Ok(context.clone())
         } else {
@@ -129,7 +315,62 @@ impl FlightSqlServiceImpl {
         }
     }
 
-    fn get_plan(&self, handle: &str) -> Result<LogicalPlan, Status> {
+    /// A client session only uses its latest context: when it starts a new round (new
+    /// handshake), the context of the previous round is dropped so contexts don't pile up
+    fn replace_session_ctx(&self, session: &str, token: &str) {
+        if let Some(old_token) = self.sessions.insert(session.to_string(), token.to_string()) {
+            info!("Dropping ctx {old_token} of session {session}");
+            self.contexts.remove(&old_token);
+            self.metrics.remove(&old_token);
+            // and the contexts derived from it
+            let derived_prefix = format!("{old_token}/");
+            self.contexts
+                .retain(|token, _| !token.starts_with(&derived_prefix));
+            self.metrics
+                .retain(|token, _| !token.starts_with(&derived_prefix));
+        }
+    }
+
+    /// Derive a context from the context of `token`: it shares the same catalog (i.e. tables),
+    /// but executes queries with a memory pool of `limit` bytes, so sorts and aggregations
+    /// have to spill to disk. Used by SQLancer's spill oracle.
+    fn create_memory_limited_ctx(&self, token: &str, limit: usize) -> Result<String, Status> {
+        let limited_token = format!("{token}/memory_limit={limit}");
+        if self.contexts.contains_key(&limited_token) {
+            return Ok(limited_token);
+        }
+
+        let ctx = self
+            .contexts
+            .get(token)
+            .map(|ctx| ctx.clone())
+            .ok_or_else(|| Status::internal(format!("Context handle not found: {token}")))?;
+        let runtime = RuntimeEnvBuilder::new()
+            .with_memory_limit(limit, 1.0)
+            .build_arc()
+            .map_err(|e| status!("Error creating runtime", e))?;
+        // The default reservation for merging spilled runs (10MB) alone would exceed small limits,
+        // keep the reservations of all partitions within a quarter of the pool
+        let config = ctx
+            .copied_config()
+            .with_target_partitions(MEMORY_LIMITED_TARGET_PARTITIONS)
+            .with_sort_spill_reservation_bytes(limit / 4 / MEMORY_LIMITED_TARGET_PARTITIONS);
+        let state = SessionStateBuilder::new_from_existing(ctx.state())
+            .with_config(config)
+            .with_runtime_env(runtime)
+            .build();
+
+        info!("New ctx {limited_token} with memory limit {limit}");
+        self.contexts.insert(
+            limited_token.clone(),
+            Arc::new(SessionContext::new_with_state(state)),
+        );
+        self.metrics
+            .insert(limited_token.clone(), QueryMetrics::default());
+        Ok(limited_token)
+    }
+
+    fn get_plan(&self, handle: &str) -> Result<(LogicalPlan, Duration), Status> {
         if let Some(plan) = self.statements.get(handle) {
             Ok(plan.clone())
         } else {
@@ -137,9 +378,10 @@ impl FlightSqlServiceImpl {
         }
     }
 
-    fn get_result(&self, handle: &str) -> Result<Vec<RecordBatch>, Status> {
-        if let Some(result) = self.results.get(handle) {
-            Ok(result.clone())
+    /// Results can only be fetched once
+    fn take_result(&self, handle: &str) -> Result<PendingResult, Status> {
+        if let Some((_, result)) = self.results.remove(handle) {
+            Ok(result)
         } else {
             Err(Status::internal(format!(
                 "Request handle not found: {handle}"
@@ -207,34 +449,45 @@ impl FlightSqlService for FlightSqlServiceImpl {
         Status,
     > {
         info!("do_handshake");
-        if let Some(msg) = _request.metadata().get("create") {
-            // A new round start at SQLancer, clear the ctx
-            info!("Resetting ctx {:?}", msg);
-            let new_ctx =
-                SessionContext::new_with_config(SessionConfig::new().with_information_schema(true));
-
-            let mut ctx_guard = self.ctx.lock().await; // Use `lock()` for async Mutex
-            *ctx_guard = new_ctx;
+        if let Some(session) = _request.metadata().get("attach") {
+            // A native Flight client of SQLancer (`DataFusionFlightClient`) shares the context
+            // of the JDBC connection of the same session, instead of getting a new one.
+            // With 'memory_limit', it gets a memory-limited context derived from it instead.
+            let session = session
+                .to_str()
+                .map_err(|e| Status::internal(format!("Error parsing attach header: {e}")))?;
+            let token = self
+                .sessions
+                .get(session)
+                .map(|token| token.value().clone())
+                .ok_or_else(|| Status::internal(format!("Session not found: {session}")))?;
+            if let Some(limit) = _request.metadata().get("memory_limit") {
+                let limit = limit
+                    .to_str()
+                    .ok()
+                    .and_then(|limit| limit.parse::<usize>().ok())
+                    .ok_or_else(|| Status::invalid_argument("Invalid memory_limit header"))?;
+                return handshake_response(self.create_memory_limited_ctx(&token, limit)?);
+            }
+            return handshake_response(token);
         }
         // no authentication actually takes place here
         // see Ballista implementation for example of basic auth
         // in this case, we simply accept the connection and create a new SessionContext
         // the SessionContext will be re-used within this same connection/session
         let token = self.create_ctx().await?;
+        if let Some(msg) = _request.metadata().get("create") {
+            // A new round start at SQLancer, the new ctx starts empty
+            info!("New ctx {token} for database {:?}", msg);
+        }
+        if let Some(session) = _request.metadata().get("session") {
+            let session = session
+                .to_str()
+                .map_err(|e| Status::internal(format!("Error parsing session header: {e}")))?;
+            self.replace_session_ctx(session, &token);
+        }
 
-        let result = HandshakeResponse {
-            protocol_version: 0,
-            payload: token.as_bytes().to_vec().into(),
-        };
-        let result = Ok(result);
-        let output = futures::stream::iter(vec![result]);
-        let str = format!("Bearer {token}");
-        let mut resp: Response<Pin<Box<dyn Stream<Item = Result<_, _>> + Send>>> =
-            Response::new(Box::pin(output));
-        let md = MetadataValue::try_from(str)
-            .map_err(|_| Status::invalid_argument("authorization not parsable"))?;
-        resp.metadata_mut().insert("authorization", md);
-        Ok(resp)
+        handshake_response(token)
     }
 
     async fn do_get_fallback(
@@ -257,14 +510,22 @@ impl FlightSqlService for FlightSqlServiceImpl {
         let handle = fr.handle;
 
         info!("getting results for {handle}");
-        let result = self.get_result(&handle)?;
-        // if we get an empty result, create an empty schema
-        let (schema, batches) = match result.first() {
-            None => (Arc::new(Schema::empty()), vec![]),
-            Some(batch) => (batch.schema(), result.clone()),
-        };
-
-        let batch_stream = futures::stream::iter(batches).map(Ok);
+        let PendingResult {
+            schema,
+            first,
+            rest,
+            mut run,
+            ..
+        } = self.take_result(&handle)?;
+
+        // `run` is moved into the stream, and dropped with it once the result is streamed
+        let rest = rest.into_inner().inspect_ok(move |batch| {
+            if let Some(run) = run.as_mut() {
+                run.record(batch);
+            }
+        });
+        let batch_stream = futures::stream::iter(first.map(Ok))
+            .chain(rest.map_err(|e| FlightError::ExternalError(Box::new(e))));
 
         let stream = FlightDataEncoderBuilder::new()
             .with_schema(schema)
@@ -277,28 +538,24 @@ impl FlightSqlService for FlightSqlServiceImpl {
     async fn get_flight_info_prepared_statement(
         &self,
         cmd: CommandPreparedStatementQuery,
-        _request: Request<FlightDescriptor>,
+        request: Request<FlightDescriptor>,
     ) -> Result<Response<FlightInfo>, Status> {
         info!("get_flight_info_prepared_statement {:?}", cmd);
         let handle = std::str::from_utf8(&cmd.prepared_statement_handle)
             .map_err(|e| status!("Unable to parse uuid", e))?;
 
-        //let ctx = self.get_ctx(&request)?;
-        let plan = self.get_plan(handle)?;
+        let token = self.get_token(&request)?;
+        let ctx = self.get_ctx(&request)?;
+        let (plan, planning) = self.get_plan(handle)?;
+        let run = QueryRun::new(self.metrics.clone(), token, planning, &ctx);
 
-        let ctx_guard = self.ctx.lock().await;
-        let state = (*ctx_guard).state();
-        let df = DataFrame::new(state, plan);
-        let result = df
-            .collect()
+        let df = DataFrame::new(ctx.state(), plan);
+        let stream = df
+            .execute_stream()
             .await
             .map_err(|e| status!("Errorr executing query", e))?;
-
-        // if we get an empty result, create an empty schema
-        let schema = match result.first() {
-            None => Schema::empty(),
-            Some(batch) => (*batch.schema()).clone(),
-        };
+        let result = PendingResult::try_new(stream, run).await?;
+        let schema = result.schema.clone();
 
         self.results.insert(handle.to_string(), result);
 
@@ -338,7 +595,7 @@ impl FlightSqlService for FlightSqlServiceImpl {
         let schema = data.schema();
 
         let uuid = Uuid::new_v4().hyphenated().to_string();
-        self.results.insert(uuid.clone(), vec![data]);
+        self.results.insert(uuid.clone(), PendingResult::from_batch(data));
 
         let fetch = FetchResults { handle: uuid };
         let buf = fetch.as_any().encode_to_vec().into();
@@ -361,7 +618,7 @@ impl FlightSqlService for FlightSqlServiceImpl {
     async fn do_put_prepared_statement_update(
         &self,
         handle: CommandPreparedStatementUpdate,
-        _request: Request<PeekableFlightDataStream>,
+        request: Request<PeekableFlightDataStream>,
     ) -> Result<i64, Status> {
         info!("do_put_prepared_statement_update");
         // statements like "CREATE TABLE.." or "SET datafusion.nnn.." call this function
@@ -369,13 +626,11 @@ impl FlightSqlService for FlightSqlServiceImpl {
         let handle = std::str::from_utf8(&handle.prepared_statement_handle)
             .map_err(|e| status!("Unable to parse uuid", e))?;
 
-        //let ctx = self.get_ctx(&request)?;
-        let plan = self.get_plan(handle)?;
+        let ctx = self.get_ctx(&request)?;
+        let (plan, _) = self.get_plan(handle)?;
         //println!("do_put_prepared_statement_update plan is {:?}", plan);
 
-        let ctx_guard = self.ctx.lock().await;
-        let state = (*ctx_guard).state();
-        let df = DataFrame::new(state, plan);
+        let df = DataFrame::new(ctx.state(), plan);
         df.collect()
             .await
             .map_err(|e| status!("Error executing query", e))?;
@@ -386,25 +641,26 @@ impl FlightSqlService for FlightSqlServiceImpl {
     async fn do_action_create_prepared_statement(
         &self,
         query: ActionCreatePreparedStatementRequest,
-        _request: Request<Action>,
+        request: Request<Action>,
     ) -> Result<ActionCreatePreparedStatementResult, Status> {
         let user_query = query.query.as_str();
         info!("do_action_create_prepared_statement: {user_query}");
 
-        //let ctx = self.get_ctx(&request)?;
-
-        let ctx_guard = self.ctx.lock().await;
-        let plan = (*ctx_guard)
+        let ctx = self.get_ctx(&request)?;
+        let started = Instant::now();
+        let plan = ctx
             .sql(user_query)
             .await
             .and_then(|df| df.into_optimized_plan())
             .map_err(|e| Status::internal(format!("Error building plan: {e}")))?;
+        let planning = started.elapsed();
 
         info!("Plan is {:#?}", plan);
 
         // store a copy of the plan,  it will be used for execution
         let plan_uuid = Uuid::new_v4().hyphenated().to_string();
-        self.statements.insert(plan_uuid.clone(), plan.clone());
+        self.statements
+            .insert(plan_uuid.clone(), (plan.clone(), planning));
 
         let arrow_schema = plan.schema().as_arrow();
         let message = SchemaAsIpc::new(&arrow_schema, &IpcWriteOptions::default())
@@ -436,9 +692,54 @@ impl FlightSqlService for FlightSqlServiceImpl {
         Ok(())
     }
 
+    async fn do_action_fallback(
+        &self,
+        request: Request<Action>,
+    ) -> Result<Response<<Self as FlightService>::DoActionStream>, Status> {
+        if request.get_ref().r#type != QUERY_METRICS_ACTION {
+            Err(Status::invalid_argument(format!(
+                "do_action: The defined request is invalid: {:?}",
+                request.get_ref().r#type
+            )))?
+        }
+
+        let token = self.get_token(&request)?;
+        let metrics = self
+            .metrics
+            .get(&token)
+            .map(|metrics| metrics.clone())
+            .ok_or_else(|| Status::internal(format!("Context handle not found: {token}")))?;
+        let body =
+            serde_json::to_vec(&metrics).map_err(|e| status!("Unable to encode metrics", e))?;
+        let result = arrow_flight::Result { body: body.into() };
+        Ok(Response::new(Box::pin(futures::stream::iter(vec![Ok(result)]))))
+    }
+
     async fn register_sql_info(&self, _id: i32, _result: &SqlInfo) {}
 }
 
+/// Return `token` to the client, it will be sent back as bearer token in following requests
+fn handshake_response(
+    token: String,
+) -> Result<
+    Response<Pin<Box<dyn Stream<Item = Result<HandshakeResponse, Status>> + Send>>>,
+    Status,
+> {
+    let result = HandshakeResponse {
+        protocol_version: 0,
+        payload: token.as_bytes().to_vec().into(),
+    };
+    let result = Ok(result);
+    let output = futures::stream::iter(vec![result]);
+    let str = format!("Bearer {token}");
+    let mut resp: Response<Pin<Box<dyn Stream<Item = Result<_, _>> + Send>>> =
+        Response::new(Box::pin(output));
+    let md = MetadataValue::try_from(str)
+        .map_err(|_| Status::invalid_argument("authorization not parsable"))?;
+    resp.metadata_mut().insert("authorization", md);
+    Ok(resp)
+}
+
 #[derive(Clone, PartialEq, ::prost::Message)]
 pub struct FetchResults {
     #[prost(string, tag = "1")]
@@ -0,0 +1,231 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExpr;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.SQLConnection;
+import sqlancer.common.DBMSCommon;
+import sqlancer.common.ast.newast.NewBinaryOperatorNode;
+import sqlancer.common.ast.newast.Node;
+import sqlancer.common.oracle.CERTOracleBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionConstant;
+import sqlancer.datafusion.ast.DataFusionExpression;
+import sqlancer.datafusion.ast.DataFusionSelect;
+import sqlancer.datafusion.ast.DataFusionSelect.JoinType;
+import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
+
+/*
+ * Cardinality estimation (CERT) oracle
+ *
+ * Bad row estimates lead to bad plans (join order, build side, ...). Estimated row counts should at least be
+ * monotonic: a more restrictive query shouldn't be estimated to return more rows. So:
+ * 1. Get estimated output rows of a generated query, from `EXPLAIN` with `show_statistics` enabled
+ * 2. Apply one `CERTOracleBase.Mutator`, which makes the query more or less restrictive
+ * 3. Get estimated output rows of the mutated query, and check the estimates change in the same direction
+ *
+ * Like other CERT oracles, queries are only compared when their plans have the same shape (edit distance of the
+ * operator sequences <= 1), and estimates can be off by one.
+ *
+ * GROUP BY and HAVING mutators are not used: `setAggregates()` generates GROUP BY together with the fetch columns.
+ */
+public class DataFusionCERTOracle extends CERTOracleBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+    private static final String SHOW_STATISTICS = "datafusion.explain.show_statistics";
+    private static final String PHYSICAL_PLAN_ONLY = "datafusion.explain.physical_plan_only";
+    // e.g. "FilterExec: v0@0 > 1, statistics=[Rows=Inexact(2), Bytes=Inexact(16), [(Col[0]:)]]"
+    private static final Pattern ROW_ESTIMATE = Pattern.compile("statistics=\\[Rows=(?:Exact|Inexact)\\((\\d+)\\)");
+    private static final Pattern OPERATOR = Pattern.compile("^\\s*(\\w+)");
+    private static final int MAX_LIMIT = 100;
+
+    private DataFusionSelect select;
+    // Session defaults, read on first check
+    private Map<String, String> defaults;
+
+    public DataFusionCERTOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        queryPlan1Sequences = new ArrayList<>();
+        queryPlan2Sequences = new ArrayList<>();
+
+        select = getRandomSelect(state);
+        select.mutateEquivalentTableName();
+        if (Randomly.getBoolean()) {
+            select.setAggregates(state);
+        }
+        if (Randomly.getBooleanWithRatherLowProbability()) {
+            select.distinct = true;
+        }
+
+        SQLConnection con = state.getConnection();
+        if (defaults == null) {
+            defaults = DataFusionSessionSettings.get(con, SHOW_STATISTICS, PHYSICAL_PLAN_ONLY);
+        }
+        String settings = DataFusionSessionSettings.set(con,
+                Map.of(SHOW_STATISTICS, "true", PHYSICAL_PLAN_ONLY, "true"));
+        try {
+            compareEstimates(con, settings);
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        } finally {
+            DataFusionSessionSettings.set(con, defaults);
+        }
+    }
+
+    private void compareEstimates(SQLConnection con, String settings) throws SQLException {
+        String query1 = DataFusionToStringVisitor.asString(select);
+        long rows1 = getEstimatedRows(con, query1, queryPlan1Sequences);
+
+        boolean increase = mutate(Mutator.GROUPBY, Mutator.HAVING);
+
+        String query2 = DataFusionToStringVisitor.asString(select);
+        long rows2 = getEstimatedRows(con, query2, queryPlan2Sequences);
+
+        if (state.getOptions().logEachSelect()) {
+            state.dfLogger.appendToLog(SELECT, "-- estimated rows: " + rows1 + "\n" + query1 + ";\n"
+                    + "-- estimated rows: " + rows2 + "\n" + query2 + ";");
+        }
+        // Different plans can legitimately estimate differently
+        if (DBMSCommon.editDistance(queryPlan1Sequences, queryPlan2Sequences) > 1) {
+            return;
+        }
+        if (increase && rows1 > rows2 + 1 || !increase && rows1 + 1 < rows2) {
+            throw new AssertionError("CERT oracle: inconsistent row estimates, the " + (increase ? "first" : "second")
+                    + " query is more restrictive\n" + settings + "EXPLAIN " + query1 + "; -- estimated rows: " + rows1
+                    + "\n" + "EXPLAIN " + query2 + "; -- estimated rows: " + rows2);
+        }
+    }
+
+    // Estimated output rows of the root operator, the operator of each plan line is added to `planSequences`
+    private long getEstimatedRows(SQLConnection con, String query, List<String> planSequences) throws SQLException {
+        String plan = null;
+        try (Statement statement = con.createStatement(); ResultSet rs = statement.executeQuery("EXPLAIN " + query)) {
+            while (rs.next()) {
+                if ("physical_plan".equals(rs.getString(1))) {
+                    plan = rs.getString(2);
+                }
+            }
+        } catch (SQLException e) {
+            throw DataFusionResultComparator.ignoreOrFail(e, "EXPLAIN " + query, errors);
+        }
+        if (plan == null) {
+            throw new IgnoreMeException();
+        }
+
+        String[] lines = plan.split("\n");
+        for (String line : lines) {
+            Matcher operator = OPERATOR.matcher(line);
+            if (operator.find()) {
+                planSequences.add(operator.group(1));
+            }
+        }
+        // `Rows=Absent`: nothing to compare
+        Matcher estimate = ROW_ESTIMATE.matcher(lines[0]);
+        if (!estimate.find()) {
+            throw new IgnoreMeException();
+        }
+        return Long.parseLong(estimate.group(1));
+    }
+
+    // INNER <= LEFT, RIGHT <= FULL, on one join with an ON condition
+    @Override
+    protected boolean mutateJoin() {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < select.from.joinTypeList.size(); i++) {
+            JoinType type = select.from.joinTypeList.get(i);
+            if (type != JoinType.CROSS && type != JoinType.NATURAL && select.from.joinConditionList.get(i) != null) {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return mutateWhere();
+        }
+        int i = Randomly.fromList(candidates);
+        JoinType type = select.from.joinTypeList.get(i);
+        JoinType newType;
+        if (type == JoinType.INNER) {
+            newType = Randomly.fromOptions(JoinType.LEFT, JoinType.RIGHT, JoinType.FULL);
+        } else if (type == JoinType.FULL) {
+            newType = Randomly.fromOptions(JoinType.INNER, JoinType.LEFT, JoinType.RIGHT);
+        } else {
+            newType = Randomly.fromOptions(JoinType.INNER, JoinType.FULL);
+        }
+        select.from.joinTypeList.set(i, newType);
+        return newType == JoinType.FULL || type == JoinType.INNER;
+    }
+
+    @Override
+    protected boolean mutateDistinct() {
+        boolean increase = select.distinct;
+        select.distinct = !select.distinct;
+        return increase;
+    }
+
+    @Override
+    protected boolean mutateWhere() {
+        boolean increase = select.getWhereClause() != null;
+        if (increase) {
+            select.setWhereClause(null);
+        } else {
+            select.setWhereClause(select.exprGenAll.generatePredicate());
+        }
+        return increase;
+    }
+
+    @Override
+    protected boolean mutateAnd() {
+        return combineWhere(DataFusionBaseExprType.AND);
+    }
+
+    @Override
+    protected boolean mutateOr() {
+        return combineWhere(DataFusionBaseExprType.OR);
+    }
+
+    // WHERE p -> WHERE p AND/OR q
+    private boolean combineWhere(DataFusionBaseExprType operator) {
+        Node<DataFusionExpression> predicate = select.exprGenAll.generatePredicate();
+        if (select.getWhereClause() == null) {
+            select.setWhereClause(predicate);
+            return false;
+        }
+        select.setWhereClause(new NewBinaryOperatorNode<>(select.getWhereClause(), predicate, getExpr(operator)));
+        return operator == DataFusionBaseExprType.OR;
+    }
+
+    @Override
+    protected boolean mutateLimit() {
+        boolean increase = select.getLimitClause() != null;
+        if (increase) {
+            select.setLimitClause(null);
+        } else {
+            select.setLimitClause(DataFusionConstant.createIntConstant(state.getRandomly().getInteger(0, MAX_LIMIT)));
+        }
+        return increase;
+    }
+}
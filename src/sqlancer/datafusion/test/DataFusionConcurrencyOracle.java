@@ -0,0 +1,150 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionConnection;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionSelect;
+
+/*
+ * Concurrent execution stress oracle
+ *
+ * Run a generated query:
+ * 1. Once serially on the connection of current database (baseline)
+ * 2. From `--stress-connections` connections at the same time, all attached to the same server context (i.e. the
+ * same session and tables, see `DataFusionConnection.getAttachedConnections()`)
+ * and check every concurrent result is the same multiset of rows as the baseline. Races inside the engine (shared
+ * table providers, caches, memory pool) show up as different results or unexpected errors.
+ *
+ * Latency inflation (slowest concurrent run / serial run) is recorded in the query log.
+ */
+public class DataFusionConcurrencyOracle extends NoRECBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+
+    private final DataFusionGlobalState state;
+
+    public DataFusionConcurrencyOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        randomSelect.mutateEquivalentTableName();
+        if (Randomly.getBoolean()) {
+            randomSelect.setAggregates(state);
+        }
+        if (Randomly.getBoolean()) {
+            randomSelect.setOrderByClauses(randomSelect.exprGenAll.generateOrderBys());
+        }
+        String query = DataFusionToStringVisitor.asString(randomSelect);
+        if (DataFusionResultComparator.isOrderSensitive(query)) {
+            throw new IgnoreMeException();
+        }
+        int connections = state.getDbmsSpecificOptions().stressConnections;
+        List<DataFusionConnection> attached = ((DataFusionConnection) state.getConnection())
+                .getAttachedConnections(connections);
+
+        try {
+            long start = System.nanoTime();
+            List<String> expected = DataFusionResultComparator.getSortedRows(state.getConnection(), query, errors);
+            long serialMs = (System.nanoTime() - start) / 1_000_000;
+
+            List<ConcurrentRun> runs = runConcurrently(attached, query);
+            long slowestMs = 0;
+            for (int i = 0; i < runs.size(); i++) {
+                ConcurrentRun run = runs.get(i);
+                if (run.error != null) {
+                    throw DataFusionResultComparator.ignoreOrFail(run.error, query, errors);
+                }
+                DataFusionResultComparator.assertSameRows(expected, run.rows, "Concurrency oracle: results differ\n"
+                        + "Query: " + query + ";\n" + "Run " + i + " of " + connections + " concurrent runs");
+                slowestMs = Math.max(slowestMs, run.elapsedMs);
+            }
+
+            if (state.getOptions().logEachSelect()) {
+                state.dfLogger.appendToLog(SELECT, "-- serial " + serialMs + "ms, " + connections
+                        + " concurrent: slowest " + slowestMs + "ms (latency inflation "
+                        + String.format("%.1f", (double) slowestMs / Math.max(serialMs, 1)) + "x)\n" + query + ";");
+            }
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        }
+    }
+
+    private static List<ConcurrentRun> runConcurrently(List<DataFusionConnection> connections, String query)
+            throws SQLException {
+        String owner = Thread.currentThread().getName();
+        AtomicInteger workerId = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(connections.size(),
+                r -> new Thread(r, owner + "-stress-" + workerId.getAndIncrement()));
+        // Released when all workers are ready, so queries really overlap
+        CountDownLatch startSignal = new CountDownLatch(1);
+        try {
+            List<Future<ConcurrentRun>> futures = new ArrayList<>();
+            for (DataFusionConnection connection : connections) {
+                futures.add(executor.submit(() -> {
+                    startSignal.await();
+                    return ConcurrentRun.execute(connection, query);
+                }));
+            }
+            startSignal.countDown();
+
+            List<ConcurrentRun> runs = new ArrayList<>();
+            for (Future<ConcurrentRun> future : futures) {
+                runs.add(future.get());
+            }
+            return runs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for concurrent queries", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Concurrent query failed: " + query, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class ConcurrentRun {
+        private List<String> rows;
+        private SQLException error;
+        private long elapsedMs;
+
+        static ConcurrentRun execute(DataFusionConnection connection, String query) {
+            ConcurrentRun run = new ConcurrentRun();
+            long start = System.nanoTime();
+            try {
+                run.rows = DataFusionResultComparator.getSortedRows(connection, query);
+            } catch (SQLException e) {
+                run.error = e;
+            }
+            run.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            return run;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import sqlancer.ComparatorHelper;
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionConnection;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionSchema.DataFusionTable;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionSelect;
+
+/*
+ * Hang and slow query oracle
+ *
+ * Run a generated query through the native Flight client (see `DataFusionFlightClient.getRowHashes()`) with a
+ * deadline: `--hang-timeout-ms`, plus 1ms for every `ROWS_PER_MS` rows of input (product of the row counts of tables
+ * in FROM, joins can legitimately be that expensive). When the deadline passes the query is cancelled on server side,
+ * and reported with:
+ * - its `EXPLAIN` output
+ * - a reproducer only containing statements on the tables used by the query
+ * instead of stalling current thread forever.
+ */
+public class DataFusionHangOracle extends NoRECBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+    private static final double ROWS_PER_MS = 1000;
+    private static final long MAX_TIMEOUT_MS = 10 * 60 * 1000;
+    // Base table name in statements: `t1` in `t1`, `t1_stringview`, `t1.arrow`, ...
+    private static final Pattern TABLE_NAME = Pattern.compile("\\bt\\d+");
+
+    private final DataFusionGlobalState state;
+    // base table -> row count, tables don't change while oracles are running
+    private final Map<String, Long> rowCounts = new HashMap<>();
+
+    public DataFusionHangOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        randomSelect.mutateEquivalentTableName();
+        if (Randomly.getBoolean()) {
+            randomSelect.setAggregates(state);
+        }
+        if (Randomly.getBoolean()) {
+            randomSelect.setOrderByClauses(randomSelect.exprGenAll.generateOrderBys());
+        }
+        String query = DataFusionToStringVisitor.asString(randomSelect);
+
+        Set<String> baseTables = randomSelect.tableList.stream().map(DataFusionTable::getBaseName)
+                .collect(Collectors.toSet());
+        double inputRows = 1;
+        for (String table : baseTables) {
+            inputRows *= Math.max(getRowCount(table), 1);
+        }
+        long timeoutMs = (long) Math.min(MAX_TIMEOUT_MS,
+                state.getDbmsSpecificOptions().hangTimeoutMs + inputRows / ROWS_PER_MS);
+
+        try {
+            ((DataFusionConnection) state.getConnection()).getFlightClient().getRowHashes(query, timeoutMs);
+        } catch (SQLTimeoutException e) {
+            String errorLog = "Hang oracle: query cancelled after " + timeoutMs + "ms (input rows: "
+                    + String.format("%.0f", inputRows) + ")\n" + "Query: " + query + ";\n" + "EXPLAIN:\n"
+                    + explain(query) + "=======================================\n"
+                    + "Reproducer (statements on used tables only): \n" + getReplayOf(baseTables) + "\n";
+            state.dfLogger.appendToLog(ERROR, errorLog);
+
+            throw new AssertionError("\n\n" + errorLog.replaceAll("(?m)^", "    "));
+        } catch (SQLException e) {
+            if (e.getMessage() != null && errors.errorIsExpected(e.getMessage())) {
+                throw new IgnoreMeException();
+            }
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = query + "\n" + e + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage, e);
+        }
+    }
+
+    private long getRowCount(String table) throws SQLException {
+        Long count = rowCounts.get(table);
+        if (count == null) {
+            List<String> result = ComparatorHelper.getResultSetFirstColumnAsString("SELECT COUNT(*) FROM " + table,
+                    errors, state);
+            count = Long.parseLong(result.get(0));
+            rowCounts.put(table, count);
+        }
+        return count;
+    }
+
+    // Plan only, the query is not executed
+    private String explain(String query) {
+        StringBuilder plan = new StringBuilder();
+        try (Statement statement = state.getConnection().createStatement();
+                ResultSet rs = statement.executeQuery("EXPLAIN " + query)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append(":\n").append(rs.getString(2)).append("\n");
+            }
+        } catch (SQLException e) {
+            plan.append("(EXPLAIN failed: ").append(e.getMessage()).append(")\n");
+        }
+        return plan.toString();
+    }
+
+    // DML replay without statements on tables not in `baseTables`
+    private String getReplayOf(Set<String> baseTables) {
+        StringBuilder replay = new StringBuilder();
+        for (String line : state.getReplay().split("\n")) {
+            boolean usedTablesOnly = true;
+            Matcher matcher = TABLE_NAME.matcher(line);
+            while (matcher.find()) {
+                if (!baseTables.contains(matcher.group())) {
+                    usedTablesOnly = false;
+                }
+            }
+            if (usedTablesOnly) {
+                replay.append(line).append("\n");
+            }
+        }
+        return replay.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.common.ast.newast.Node;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionExpressionEvaluator;
+import sqlancer.datafusion.DataFusionExpressionEvaluator.CannotEvaluateException;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionSchema.DataFusionColumn;
+import sqlancer.datafusion.DataFusionSchema.DataFusionDataType;
+import sqlancer.datafusion.DataFusionSchema.DataFusionTable;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionExpression;
+import sqlancer.datafusion.ast.DataFusionSelect;
+import sqlancer.datafusion.ast.DataFusionSelect.DataFusionFrom;
+
+/*
+ * Pivoted query synthesis (PQS) in a single query, without temporary tables
+ *
+ * Same check as `DataFusionPQS`, but:
+ * - Pivot rows are fetched once per database state (oracle instance), up to `PIVOT_CANDIDATES` random rows per base
+ * table, and cached on Java side. Values are fetched cast to VARCHAR by the server, so they can be cast back without
+ * loss (e.g. doubles). Tables without rows are left out of the query.
+ * - The pivot row is inlined as `VALUES`, aliased like the tables of the query, so the predicate can be evaluated on
+ * it as is.
+ *
+ * Query looks like (predicate p is 'tt0.v0 = tt1.v0'):
+ * WITH pivot AS (
+ *   SELECT CASE WHEN p THEN 1 WHEN NOT p THEN 2 WHEN p IS NULL THEN 3 END AS variant, tt0.v0 AS cc0, tt1.v0 AS cc1
+ *   FROM (VALUES (CAST('1' AS BIGINT))) AS tt0(v0), (VALUES (CAST(NULL AS BIGINT))) AS tt1(v0)),
+ * matched AS (
+ *   SELECT 1 AS variant, tt0.v0 AS cc0, tt1.v0 AS cc1 FROM t0 AS tt0, t1 AS tt1 WHERE p
+ *   UNION ALL SELECT 2 AS variant, ... WHERE NOT p
+ *   UNION ALL SELECT 3 AS variant, ... WHERE p IS NULL)
+ * SELECT pivot.variant, COUNT(matched.variant) FROM pivot LEFT JOIN matched
+ * ON pivot.variant = matched.variant AND (pivot.cc0 IS NOT DISTINCT FROM matched.cc0) AND ...
+ * GROUP BY pivot.variant
+ *
+ * The predicate variant selecting the pivot row must return it at least once (count > 0). When the predicate can be
+ * evaluated on the pivot row in Java (see `DataFusionExpressionEvaluator`), only the matching variant is scanned and
+ * the CASE is replaced by its number.
+ */
+public class DataFusionInlinePQS extends NoRECBase<DataFusionGlobalState> implements TestOracle<DataFusionGlobalState> {
+    private static final int PIVOT_CANDIDATES = 64;
+
+    private final DataFusionGlobalState state;
+    // base table -> candidate pivot rows (values as SQL strings, null for NULL)
+    private final Map<String, List<List<String>>> pivotCandidates = new HashMap<>();
+
+    public DataFusionInlinePQS(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        // The query is a cross join, an empty table has no pivot row
+        List<DataFusionTable> nonEmptyTables = new ArrayList<>();
+        for (DataFusionTable table : state.getSchema().getDatabaseTables()) {
+            if (!getPivotCandidates(table).isEmpty()) {
+                nonEmptyTables.add(table);
+            }
+        }
+        if (nonEmptyTables.isEmpty()) {
+            throw new IgnoreMeException();
+        }
+        DataFusionSelect randomSelect = getRandomSelect(state, nonEmptyTables);
+        randomSelect.from.joinConditionList = new ArrayList<>();
+        randomSelect.from.joinTypeList = new ArrayList<>();
+        randomSelect.mutateEquivalentTableName();
+        List<DataFusionTable> tables = randomSelect.tableList;
+
+        List<String> pivotTables = new ArrayList<>();
+        List<String> pivotValues = new ArrayList<>();
+        for (DataFusionTable table : tables) {
+            List<String> pivot = Randomly.fromList(getPivotCandidates(table));
+            pivotTables.add(toValues(table, pivot));
+            pivotValues.addAll(pivot);
+        }
+
+        Node<DataFusionExpression> whereExpr = randomSelect.getWhereClause();
+        List<Node<DataFusionExpression>> variants = List.of(whereExpr,
+                randomSelect.exprGenAll.negatePredicate(whereExpr), randomSelect.exprGenAll.isNull(whereExpr));
+        List<DataFusionColumn> columns = DataFusionTable.getAllColumns(tables);
+        // tt0.v0 AS cc0, tt0.v1 AS cc1, tt1.v0 AS cc2
+        List<String> aliasedColumns = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            aliasedColumns.add(columns.get(i).getOrignalName() + " AS cc" + i);
+        }
+
+        // Only the variant true on the pivot row needs a scan, if it can be evaluated in Java
+        List<Integer> checkedVariants = List.of(0, 1, 2);
+        try {
+            checkedVariants = List
+                    .of(DataFusionExpressionEvaluator.ofRow(columns, pivotValues).getTruePredicateVariant(whereExpr));
+        } catch (CannotEvaluateException e) {
+            // Let the server pick the variant with CASE
+        }
+
+        StringBuilder variantCase = new StringBuilder("CASE");
+        List<String> matched = new ArrayList<>();
+        for (int i : checkedVariants) {
+            String predicate = DataFusionToStringVisitor.asString(variants.get(i));
+            variantCase.append(" WHEN ").append(predicate).append(" THEN ").append(i + 1);
+
+            DataFusionSelect select = new DataFusionSelect();
+            select.from = new DataFusionFrom(tables);
+            select.setWhereClause(variants.get(i));
+            select.setFetchColumnsString((i + 1) + " AS variant, " + String.join(", ", aliasedColumns));
+            matched.add(DataFusionToStringVisitor.asString(select));
+        }
+        variantCase.append(" END AS variant");
+        if (checkedVariants.size() == 1) {
+            variantCase = new StringBuilder().append(checkedVariants.get(0) + 1).append(" AS variant");
+        }
+
+        StringBuilder onCondition = new StringBuilder("pivot.variant = matched.variant");
+        for (int i = 0; i < columns.size(); i++) {
+            onCondition.append(" AND (pivot.cc").append(i).append(" IS NOT DISTINCT FROM matched.cc").append(i)
+                    .append(')');
+        }
+        String query = "WITH pivot AS (SELECT " + variantCase + ", " + String.join(", ", aliasedColumns) + " FROM "
+                + String.join(", ", pivotTables) + "),\n" + "matched AS (" + String.join("\nUNION ALL ", matched)
+                + ")\n" + "SELECT pivot.variant, COUNT(matched.variant) FROM pivot LEFT JOIN matched ON " + onCondition
+                + " GROUP BY pivot.variant";
+
+        try {
+            checkPivotRow(query);
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        }
+    }
+
+    private void checkPivotRow(String query) {
+        if (state.getOptions().logEachSelect()) {
+            state.dfLogger.appendToLog(SELECT, query + ";");
+        }
+        String variant;
+        String count;
+        try (Statement statement = state.getConnection().createStatement();
+                ResultSet rs = statement.executeQuery(query)) {
+            if (!rs.next()) {
+                throw new AssertionError("PQS oracle: no pivot row\n" + "Query: " + query + ";");
+            }
+            variant = rs.getString(1);
+            count = rs.getString(2);
+        } catch (SQLException e) {
+            throw DataFusionResultComparator.ignoreOrFail(e, query, errors);
+        }
+
+        if ("0".equals(count)) {
+            throw new AssertionError("PQS oracle violated: the pivot row is not returned by the predicate variant "
+                    + variant + " (1: p, 2: NOT p, 3: p IS NULL, NULL: none is true on the pivot row)\n" + "Query: "
+                    + query + ";");
+        }
+    }
+
+    // Rows are fetched from the base table, all its equivalent tables have the same rows
+    private List<List<String>> getPivotCandidates(DataFusionTable table) throws SQLException {
+        String baseTable = table.getBaseName();
+        List<List<String>> candidates = pivotCandidates.get(baseTable);
+        if (candidates != null) {
+            return candidates;
+        }
+
+        String query = "SELECT "
+                + table.getColumns().stream().map(c -> "CAST(" + c.getName() + " AS VARCHAR)")
+                        .collect(Collectors.joining(", "))
+                + " FROM " + baseTable + " ORDER BY RANDOM() LIMIT " + PIVOT_CANDIDATES;
+        candidates = new ArrayList<>();
+        try (Statement statement = state.getConnection().createStatement();
+                ResultSet rs = statement.executeQuery(query)) {
+            while (rs.next()) {
+                List<String> row = new ArrayList<>();
+                for (int i = 1; i <= table.getColumns().size(); i++) {
+                    row.add(rs.getString(i));
+                }
+                candidates.add(row);
+            }
+        } catch (SQLException e) {
+            throw DataFusionResultComparator.ignoreOrFail(e, query, errors);
+        }
+        pivotCandidates.put(baseTable, candidates);
+        return candidates;
+    }
+
+    // (VALUES (CAST('1' AS BIGINT), CAST(NULL AS STRING))) AS tt0(v0, v1)
+    static String toValues(DataFusionTable table, List<String> row) {
+        List<DataFusionColumn> columns = table.getColumns();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            values.add(toLiteral(row.get(i), columns.get(i).getType()));
+        }
+        return "(VALUES (" + String.join(", ", values) + ")) AS " + table.getName() + "("
+                + columns.stream().map(DataFusionColumn::getName).collect(Collectors.joining(", ")) + ")";
+    }
+
+    // CAST('1.5' AS DOUBLE), values can also be in Java format (e.g. 'Infinity' read through JDBC)
+    static String toLiteral(String value, DataFusionDataType type) {
+        if (value == null) {
+            return "CAST(NULL AS " + type + ")";
+        }
+        String literal = value;
+        if (type == DataFusionDataType.DOUBLE && value.endsWith("Infinity")) {
+            literal = value.replace("Infinity", "inf");
+        }
+        return "CAST('" + literal.replace("'", "''") + "' AS " + type + ")";
+    }
+}
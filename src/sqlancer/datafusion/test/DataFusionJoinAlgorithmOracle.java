@@ -0,0 +1,160 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.SQLConnection;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionMetricsCollector;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionSelect;
+
+/*
+ * Join algorithm differential oracle
+ *
+ * The planner picks one join operator for a query, so the others are never tested with it. Run the same multi-table
+ * query with settings forcing different join algorithms:
+ * - default (baseline)
+ * - `prefer_hash_join = false`: sort-merge join instead of hash join
+ * - `repartition_joins = false`: hash join on collected build side instead of partitioned
+ * - both of above
+ * - `allow_symmetric_joins_without_pruning = false`
+ * and check:
+ * 1. Results are the same multiset of rows
+ * 2. No algorithm is pathologically slower (> `SLOWDOWN_FACTOR` times the fastest one, confirmed by a re-run)
+ *
+ * Execution time of each algorithm is recorded in 'join_algorithm_metrics.csv' (see `DataFusionMetricsCollector`),
+ * and in the query log with `--log-each-select`.
+ */
+public class DataFusionJoinAlgorithmOracle extends NoRECBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+    private static final String PREFER_HASH_JOIN = "datafusion.optimizer.prefer_hash_join";
+    private static final String REPARTITION_JOINS = "datafusion.optimizer.repartition_joins";
+    private static final String ALLOW_SYMMETRIC_JOINS = "datafusion.optimizer.allow_symmetric_joins_without_pruning";
+    private static final Map<String, Map<String, String>> ALGORITHMS = new LinkedHashMap<>();
+    private static final int SLOWDOWN_FACTOR = 10;
+    // Slowdowns of fast queries are mostly noise
+    private static final long MIN_SLOW_QUERY_MS = 1000;
+
+    static {
+        ALGORITHMS.put("default", Collections.emptyMap());
+        ALGORITHMS.put("sort_merge", Map.of(PREFER_HASH_JOIN, "false"));
+        ALGORITHMS.put("collect_left", Map.of(REPARTITION_JOINS, "false"));
+        ALGORITHMS.put("sort_merge_no_repartition", Map.of(PREFER_HASH_JOIN, "false", REPARTITION_JOINS, "false"));
+        ALGORITHMS.put("no_symmetric", Map.of(ALLOW_SYMMETRIC_JOINS, "false"));
+    }
+
+    private final DataFusionGlobalState state;
+    // Session defaults, read on first check
+    private Map<String, String> defaults;
+
+    public DataFusionJoinAlgorithmOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        if (state.getSchema().getDatabaseTables().size() < 2) {
+            throw new IgnoreMeException();
+        }
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        while (randomSelect.tableList.size() < 2) {
+            randomSelect = getRandomSelect(state);
+        }
+        randomSelect.mutateEquivalentTableName();
+        if (Randomly.getBooleanWithRatherLowProbability()) {
+            randomSelect.setAggregates(state);
+        }
+        String query = DataFusionToStringVisitor.asString(randomSelect);
+        if (DataFusionResultComparator.isOrderSensitive(query)) {
+            throw new IgnoreMeException();
+        }
+
+        SQLConnection con = state.getConnection();
+        if (defaults == null) {
+            defaults = DataFusionSessionSettings.get(con, PREFER_HASH_JOIN, REPARTITION_JOINS, ALLOW_SYMMETRIC_JOINS);
+        }
+
+        try {
+            compareAlgorithms(con, query);
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        } finally {
+            DataFusionSessionSettings.set(con, defaults);
+        }
+    }
+
+    private void compareAlgorithms(SQLConnection con, String query) throws SQLException {
+        List<String> expected = null;
+        Map<String, Long> elapsedMs = new LinkedHashMap<>();
+        Map<String, String> settingsOf = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, String>> algorithm : ALGORITHMS.entrySet()) {
+            String settings = setAlgorithm(con, algorithm.getValue());
+            settingsOf.put(algorithm.getKey(), settings);
+            long start = System.nanoTime();
+            List<String> actual = DataFusionResultComparator.getSortedRows(con, query, errors);
+            elapsedMs.put(algorithm.getKey(), (System.nanoTime() - start) / 1_000_000);
+
+            if (expected == null) {
+                expected = actual;
+            } else {
+                DataFusionResultComparator.assertSameRows(expected, actual, "Join algorithm oracle: results differ\n"
+                        + "Query: " + query + ";\n" + "Algorithm: " + algorithm.getKey() + "\n" + settings);
+            }
+        }
+        DataFusionMetricsCollector.getInstance().recordJoinAlgorithmTimes(elapsedMs);
+        if (state.getOptions().logEachSelect()) {
+            state.dfLogger.appendToLog(SELECT, "-- join algorithm time (ms): " + elapsedMs + "\n" + query + ";");
+        }
+
+        String fastest = Collections.min(elapsedMs.entrySet(), Map.Entry.comparingByValue()).getKey();
+        String slowest = Collections.max(elapsedMs.entrySet(), Map.Entry.comparingByValue()).getKey();
+        if (isPathologicallySlow(elapsedMs.get(slowest), elapsedMs.get(fastest))) {
+            // Confirm it's not caused by a hiccup of the server
+            long fastestMs = timeWith(con, query, fastest);
+            long slowestMs = timeWith(con, query, slowest);
+            if (isPathologicallySlow(slowestMs, fastestMs)) {
+                throw new AssertionError("Join algorithm oracle: performance issue\n" + "Query: " + query + ";\n" + "'"
+                        + slowest + "' took " + slowestMs + "ms, '" + fastest + "' took " + fastestMs + "ms\n"
+                        + "Settings of '" + slowest + "':\n" + settingsOf.get(slowest));
+            }
+        }
+    }
+
+    private long timeWith(SQLConnection con, String query, String algorithm) throws SQLException {
+        setAlgorithm(con, ALGORITHMS.get(algorithm));
+        long start = System.nanoTime();
+        DataFusionResultComparator.getSortedRows(con, query, errors);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // Settings not changed by `algorithm` are reset to the defaults, returns the `SET` statements
+    private String setAlgorithm(SQLConnection con, Map<String, String> algorithm) throws SQLException {
+        Map<String, String> settings = new LinkedHashMap<>(defaults);
+        settings.putAll(algorithm);
+        return DataFusionSessionSettings.set(con, settings);
+    }
+
+    private static boolean isPathologicallySlow(long slowMs, long fastMs) {
+        return slowMs >= MIN_SLOW_QUERY_MS && slowMs > SLOWDOWN_FACTOR * Math.max(fastMs, 1);
+    }
+}
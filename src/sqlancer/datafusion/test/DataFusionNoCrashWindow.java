@@ -13,7 +13,6 @@ import sqlancer.common.oracle.TestOracle;
 import sqlancer.datafusion.DataFusionErrors;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionToStringVisitor;
-import sqlancer.datafusion.DataFusionUtil;
 import sqlancer.datafusion.ast.DataFusionSelect;
 import sqlancer.datafusion.ast.DataFusionWindowExpr;
 
@@ -44,7 +43,7 @@ public class DataFusionNoCrashWindow extends NoRECBase<DataFusionGlobalState>
             ComparatorHelper.getResultSetFirstColumnAsString(qString, errors, state);
         } catch (AssertionError e) {
             // Append detailed error message
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
             String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
             state.dfLogger.appendToLog(ERROR, newMessage);
 
@@ -1,25 +1,35 @@
 package sqlancer.datafusion.test;
 
 import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
 import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import sqlancer.ComparatorHelper;
 import sqlancer.IgnoreMeException;
+import sqlancer.Reproducer;
+import sqlancer.SQLConnection;
+import sqlancer.common.ast.newast.Node;
 import sqlancer.common.oracle.NoRECBase;
 import sqlancer.common.oracle.TestOracle;
 import sqlancer.datafusion.DataFusionErrors;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionToStringVisitor;
-import sqlancer.datafusion.DataFusionUtil;
+import sqlancer.datafusion.ast.DataFusionExpression;
 import sqlancer.datafusion.ast.DataFusionSelect;
+import sqlancer.datafusion.ast.DataFusionSelect.DataFusionFrom;
 
 public class DataFusionNoRECOracle extends NoRECBase<DataFusionGlobalState>
         implements TestOracle<DataFusionGlobalState> {
 
     private final DataFusionGlobalState state;
+    private Reproducer<DataFusionGlobalState> reproducer;
 
     public DataFusionNoRECOracle(DataFusionGlobalState globalState) {
         super(globalState);
@@ -38,6 +48,13 @@ public class DataFusionNoRECOracle extends NoRECBase<DataFusionGlobalState>
      */
     @Override
     public void check() throws SQLException {
+        reproducer = null;
+        int batchSize = state.getDbmsSpecificOptions().norecBatchSize;
+        if (batchSize > 1) {
+            checkBatched(batchSize);
+            return;
+        }
+
         /*
          * Setup Q1 and Q2
          */
@@ -76,7 +93,7 @@ public class DataFusionNoRECOracle extends NoRECBase<DataFusionGlobalState>
             q2ResultSet = ComparatorHelper.getResultSetFirstColumnAsString(q2String, errors, state);
         } catch (AssertionError e) {
             // Append detailed error message
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
             String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
             state.dfLogger.appendToLog(ERROR, newMessage);
 
@@ -89,26 +106,173 @@ public class DataFusionNoRECOracle extends NoRECBase<DataFusionGlobalState>
         int count1 = q1ResultSet != null ? Integer.parseInt(q1ResultSet.get(0)) : -1;
         int count2 = q2ResultSet != null ? Integer.parseInt(q2ResultSet.get(0)) : -1;
         if (count1 != count2) {
-            // whitelist
-            // ---------
-            // https://github.com/apache/datafusion/issues/12468
-            if (q1String.contains("NATURAL JOIN")) {
-                throw new IgnoreMeException();
+            if (state.getOptions().useReducer()) {
+                reproducer = new DataFusionNoRECReproducer(q1String, q2String);
             }
+            reportViolation(count1, q1String, count2, q2String);
+        }
+        // System.out.println("NOREC passed: \n" + q1String + "\n" + q2String);
+    }
 
-            StringBuilder errorMessage = new StringBuilder().append("NoREC oracle violated:\n")
-                    .append("    Q1(result size ").append(count1).append("):").append(q1String).append(";\n")
-                    .append("    Q2(result size ").append(count2).append("):").append(q2String).append(";\n")
-                    .append("=======================================\n").append("Reproducer: \n");
+    /*
+     * Batched NoREC (`--norec-batch-size` K > 1): K predicates over the same FROM clause
+     *
+     * q1: SELECT 0, COUNT(*) FROM [expr2] WHERE [p0] UNION ALL ... UNION ALL SELECT K-1, COUNT(*) FROM [expr2] WHERE
+     * [pK-1]
+     *
+     * q2: SELECT COUNT(CASE WHEN [p0] THEN 1 ELSE NULL END), ..., COUNT(CASE WHEN [pK-1] THEN 1 ELSE NULL END) FROM
+     * [expr2]
+     *
+     * Oracle Check: for each i, row i of q1 equals column i of q2. The FROM clause (joins) is scanned once for all K
+     * unoptimized counts. If any predicate hits an expected error, the whole batch is ignored.
+     */
+    private void checkBatched(int batchSize) throws SQLException {
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        List<Node<DataFusionExpression>> predicates = new ArrayList<>();
+        predicates.add(randomSelect.getWhereClause());
+        while (predicates.size() < batchSize) {
+            predicates.add(randomSelect.exprGenAll.generatePredicate());
+        }
 
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+        // Each branch can pick different equivalent tables
+        List<String> q1Branches = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            randomSelect.mutateEquivalentTableName();
+            DataFusionSelect q1 = new DataFusionSelect();
+            q1.setFetchColumnsString(i + ", COUNT(*)");
+            q1.from = randomSelect.from;
+            q1.setWhereClause(predicates.get(i));
+            q1Branches.add(DataFusionToStringVisitor.asString(q1));
+        }
+        String q1String = String.join(" UNION ALL ", q1Branches);
 
-            String errorLog = errorMessage.toString() + replay + "\n";
-            String indentedErrorLog = errorLog.replaceAll("(?m)^", "    ");
-            state.dfLogger.appendToLog(ERROR, errorLog);
+        randomSelect.mutateEquivalentTableName();
+        String q2String = getUnoptimizedCountQuery(randomSelect.from, predicates);
 
-            throw new AssertionError("\n\n" + indentedErrorLog);
+        long[] counts1 = new long[batchSize];
+        long[] counts2 = new long[batchSize];
+        try {
+            for (List<Long> row : getCounts(q1String)) {
+                counts1[row.get(0).intValue()] = row.get(1);
+            }
+            List<List<Long>> q2Rows = getCounts(q2String);
+            for (int i = 0; i < batchSize; i++) {
+                counts2[i] = q2Rows.get(0).get(i);
+            }
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
         }
-        // System.out.println("NOREC passed: \n" + q1String + "\n" + q2String);
+
+        for (int i = 0; i < batchSize; i++) {
+            if (counts1[i] != counts2[i]) {
+                String q2Single = getUnoptimizedCountQuery(randomSelect.from, List.of(predicates.get(i)));
+                if (state.getOptions().useReducer()) {
+                    reproducer = new DataFusionNoRECReproducer(q1Branches.get(i), q2Single);
+                }
+                reportViolation(counts1[i], q1Branches.get(i), counts2[i], q2Single + ";\n" + "    Batched Q1: "
+                        + q1String + ";\n" + "    Batched Q2 (column " + (i + 1) + "): " + q2String);
+            }
+        }
+    }
+
+    // SELECT COUNT(CASE WHEN [p0] THEN 1 ELSE NULL END), ... FROM [expr2]
+    private static String getUnoptimizedCountQuery(DataFusionFrom from, List<Node<DataFusionExpression>> predicates) {
+        DataFusionSelect q2 = new DataFusionSelect();
+        q2.setFetchColumnsString(predicates.stream().map(
+                p -> String.format("COUNT(CASE WHEN %s THEN 1 ELSE NULL END)", DataFusionToStringVisitor.asString(p)))
+                .collect(Collectors.joining(", ")));
+        q2.from = from;
+        return DataFusionToStringVisitor.asString(q2);
+    }
+
+    private List<List<Long>> getCounts(String query) throws SQLException {
+        if (state.getOptions().logEachSelect()) {
+            state.dfLogger.appendToLog(SELECT, query + ";");
+        }
+        List<List<Long>> rows;
+        try {
+            rows = getCounts(state.getConnection(), query);
+        } catch (SQLException e) {
+            throw DataFusionResultComparator.ignoreOrFail(e, query, errors);
+        }
+        if (rows.isEmpty()) {
+            throw new IgnoreMeException();
+        }
+        return rows;
+    }
+
+    private static List<List<Long>> getCounts(SQLConnection con, String query) throws SQLException {
+        List<List<Long>> rows = new ArrayList<>();
+        try (Statement statement = con.createStatement(); ResultSet rs = statement.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                List<Long> row = new ArrayList<>();
+                for (int i = 1; i <= columns; i++) {
+                    row.add(rs.getLong(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public Reproducer<DataFusionGlobalState> getLastReproducer() {
+        return reproducer;
+    }
+
+    // Re-runs the two count queries of a violation (count in the last column of their only row), errors mean the
+    // reduced statements don't trigger the bug
+    private static class DataFusionNoRECReproducer implements Reproducer<DataFusionGlobalState> {
+        private final String q1String;
+        private final String q2String;
+
+        DataFusionNoRECReproducer(String q1String, String q2String) {
+            this.q1String = q1String;
+            this.q2String = q2String;
+        }
+
+        @Override
+        public boolean bugStillTriggers(DataFusionGlobalState globalState) {
+            try {
+                List<List<Long>> q1Rows = getCounts(globalState.getConnection(), q1String);
+                List<List<Long>> q2Rows = getCounts(globalState.getConnection(), q2String);
+                if (q1Rows.size() != 1 || q2Rows.size() != 1) {
+                    return false;
+                }
+                List<Long> q1Row = q1Rows.get(0);
+                List<Long> q2Row = q2Rows.get(0);
+                return !q1Row.get(q1Row.size() - 1).equals(q2Row.get(q2Row.size() - 1));
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+
+    private void reportViolation(long count1, String q1String, long count2, String q2String) {
+        // whitelist
+        // ---------
+        // https://github.com/apache/datafusion/issues/12468
+        if (q1String.contains("NATURAL JOIN")) {
+            throw new IgnoreMeException();
+        }
+
+        StringBuilder errorMessage = new StringBuilder().append("NoREC oracle violated:\n")
+                .append("    Q1(result size ").append(count1).append("):").append(q1String).append(";\n")
+                .append("    Q2(result size ").append(count2).append("):").append(q2String).append(";\n")
+                .append("=======================================\n").append("Reproducer: \n");
+
+        String replay = state.getReplay();
+
+        String errorLog = errorMessage.toString() + replay + "\n";
+        String indentedErrorLog = errorLog.replaceAll("(?m)^", "    ");
+        state.dfLogger.appendToLog(ERROR, errorLog);
+
+        throw new AssertionError("\n\n" + indentedErrorLog);
     }
 }
@@ -3,7 +3,9 @@ package sqlancer.datafusion.test;
 import static sqlancer.datafusion.DataFusionUtil.dfAssert;
 import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -12,17 +14,20 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import sqlancer.IgnoreMeException;
+import sqlancer.Reproducer;
+import sqlancer.SQLConnection;
 import sqlancer.common.ast.newast.Node;
 import sqlancer.common.oracle.NoRECBase;
 import sqlancer.common.oracle.TestOracle;
 import sqlancer.common.query.SQLQueryAdapter;
 import sqlancer.common.query.SQLancerResultSet;
 import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionExpressionEvaluator;
+import sqlancer.datafusion.DataFusionExpressionEvaluator.CannotEvaluateException;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionSchema.DataFusionColumn;
 import sqlancer.datafusion.DataFusionSchema.DataFusionTable;
 import sqlancer.datafusion.DataFusionToStringVisitor;
-import sqlancer.datafusion.DataFusionUtil;
 import sqlancer.datafusion.DataFusionUtil.DataFusionLogger;
 import sqlancer.datafusion.ast.DataFusionExpression;
 import sqlancer.datafusion.ast.DataFusionSelect;
@@ -41,6 +46,8 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
 
     private StringBuilder currentCheckLog; // Each append should end with '\n'
 
+    private Reproducer<DataFusionGlobalState> reproducer;
+
     public DataFusionPQS(DataFusionGlobalState globalState) {
         super(globalState);
         this.state = globalState;
@@ -77,7 +84,8 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
     @Override
     public void check() throws SQLException {
         this.currentCheckLog = new StringBuilder();
-        String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+        reproducer = null;
+        String replay = state.getReplay();
         currentCheckLog.append(replay);
         pqsCleanUp();
 
@@ -180,6 +188,8 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
         SQLancerResultSet ttResult = null;
         SQLQueryAdapter ttSelect = new SQLQueryAdapter("select * from tt", errors);
         int nrow = 0;
+        // Values of the pivot row, in the same order as `allColumns`
+        List<String> ttRow = new ArrayList<>();
         try {
             ttResult = ttSelect.executeAndGetLogged(state);
 
@@ -190,6 +200,9 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
 
             while (ttResult.next()) {
                 nrow++;
+                for (int i = 1; i <= allColumns.size(); i++) {
+                    ttRow.add(ttResult.getString(i));
+                }
             }
         } catch (Exception e) {
             // Possible bug here, investigate later
@@ -207,9 +220,20 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
             throw new IgnoreMeException("Empty table is picked");
         }
 
+        // Evaluate the predicate on the pivot row in Java if possible, otherwise ask the server with all 3 candidate
+        // pivot queries below
         Node<DataFusionExpression> pivotPredicate = null;
         String pivotRow = "";
-        for (int i = 0; i < pivotQs.size(); i++) {
+        try {
+            int variant = DataFusionExpressionEvaluator.ofRow(allColumns, ttRow).getTruePredicateVariant(whereExpr);
+            pivotPredicate = candidatePredicates.get(variant);
+            pivotRow = ttRow.stream().map(v -> "[" + v + "]").collect(Collectors.joining());
+            currentCheckLog.append("==== Pivot predicate evaluated locally:\n").append(pivotQs.get(variant))
+                    .append("\n");
+        } catch (CannotEvaluateException e) {
+            // Fall back to pivot queries
+        }
+        for (int i = 0; pivotPredicate == null && i < pivotQs.size(); i++) {
             String pivotQ = pivotQs.get(i);
             SQLQueryAdapter qSelect = new SQLQueryAdapter(pivotQ, errors);
             SQLancerResultSet rs = null;
@@ -281,6 +305,27 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
         String selectAllRowsString = DataFusionToStringVisitor.asString(selectAllRows);
         String tttCreate = "CREATE TABLE ttt AS\n" + selectAllRowsString;
 
+        // Same check without `tt` and `ttt` for the reducer, with the pivot row inlined (`tt` is picked randomly)
+        List<String> pivotTables = new ArrayList<>();
+        int offset = 0;
+        for (DataFusionTable table : randomSelect.tableList) {
+            int ncol = table.getColumns().size();
+            pivotTables.add(DataFusionInlinePQS.toValues(table, ttRow.subList(offset, offset + ncol)));
+            offset += ncol;
+        }
+        String pivotMatchQuery = "SELECT COUNT(*) FROM " + String.join(", ", pivotTables) + " WHERE "
+                + DataFusionToStringVisitor.asString(pivotPredicate);
+        List<String> pivotConditions = new ArrayList<>();
+        for (int i = 0; i < allSelectColumns.size(); i++) {
+            pivotConditions.add("(ttt.cc" + i + " IS NOT DISTINCT FROM "
+                    + DataFusionInlinePQS.toLiteral(ttRow.get(i), allSelectColumns.get(i).getType()) + ")");
+        }
+        String pivotCond = String.join(" AND ", pivotConditions);
+        String filteredCountQuery = "SELECT COUNT(*) FROM (" + selectAllRowsString + ") AS ttt WHERE " + pivotCond;
+        selectAllRows.setWhereClause(null);
+        String allCountQuery = "SELECT COUNT(*) FROM (" + DataFusionToStringVisitor.asString(selectAllRows)
+                + ") AS ttt WHERE " + pivotCond;
+
         SQLQueryAdapter tttCreateStmt = new SQLQueryAdapter(tttCreate, errors);
         tttCreateStmt.execute(state);
         setColumnAlias(randomSelect.tableList);
@@ -317,7 +362,10 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
             }
 
             if (joinCount.equals("0")) {
-                String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+                if (state.getOptions().useReducer()) {
+                    reproducer = new DataFusionPQSReproducer(pivotMatchQuery, allCountQuery, filteredCountQuery);
+                }
+                String replay = state.getReplay();
                 StringBuilder errorLog = new StringBuilder().append("PQS oracle violated:\n").append("Found ")
                         .append(joinCount).append(" pivot rows:\n").append(" Pivot row: ").append(pivotRow).append("\n")
                         .append("Query to select pivot row: ").append(ttCreate).append("\n")
@@ -341,4 +389,43 @@ public class DataFusionPQS extends NoRECBase<DataFusionGlobalState> implements T
             }
         }
     }
+
+    @Override
+    public Reproducer<DataFusionGlobalState> getLastReproducer() {
+        return reproducer;
+    }
+
+    // The bug still triggers if:
+    // - the pivot predicate is true on the inlined pivot row (`pivotMatchQuery`)
+    // - the pivot row is still in the tables (`allCountQuery`)
+    // - but it's not selected by the pivot predicate (`filteredCountQuery`)
+    // Errors mean the reduced statements don't trigger the bug
+    private static class DataFusionPQSReproducer implements Reproducer<DataFusionGlobalState> {
+        private final String pivotMatchQuery;
+        private final String allCountQuery;
+        private final String filteredCountQuery;
+
+        DataFusionPQSReproducer(String pivotMatchQuery, String allCountQuery, String filteredCountQuery) {
+            this.pivotMatchQuery = pivotMatchQuery;
+            this.allCountQuery = allCountQuery;
+            this.filteredCountQuery = filteredCountQuery;
+        }
+
+        @Override
+        public boolean bugStillTriggers(DataFusionGlobalState globalState) {
+            SQLConnection con = globalState.getConnection();
+            try {
+                return getCount(con, pivotMatchQuery) > 0 && getCount(con, allCountQuery) > 0
+                        && getCount(con, filteredCountQuery) == 0;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private static long getCount(SQLConnection con, String query) throws SQLException {
+            try (Statement statement = con.createStatement(); ResultSet rs = statement.executeQuery(query)) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.SQLConnection;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionSelect;
+
+/*
+ * Parallelism differential oracle
+ *
+ * Physical plans differ a lot with `datafusion.execution.target_partitions` (repartitioning, partial/final aggregates,
+ * merges) and `datafusion.execution.batch_size` (batch boundaries in every operator). Run the same query (generated
+ * like in `DataFusionNoRECOracle`) under:
+ * - 1 partition, default batch size (baseline)
+ * - many partitions, default batch size
+ * - 1 partition, tiny batch size
+ * - many partitions, tiny batch size
+ * and check the results are the same multiset of rows.
+ *
+ * Settings are changed with `SET` on the session of current database, and restored after each check (see
+ * `DataFusionSessionSettings`).
+ */
+public class DataFusionParallelismOracle extends NoRECBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+    private static final String TARGET_PARTITIONS = "datafusion.execution.target_partitions";
+    private static final String BATCH_SIZE = "datafusion.execution.batch_size";
+
+    private final DataFusionGlobalState state;
+    // Session defaults (depend on server's CPU count), read on first check
+    private Map<String, String> defaults;
+
+    public DataFusionParallelismOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        randomSelect.mutateEquivalentTableName();
+        if (Randomly.getBoolean()) {
+            randomSelect.setAggregates(state);
+        } else if (Randomly.getBooleanWithRatherLowProbability()) {
+            randomSelect.distinct = true;
+        }
+        if (Randomly.getBoolean()) {
+            randomSelect.setOrderByClauses(randomSelect.exprGenAll.generateOrderBys());
+        }
+        String query = DataFusionToStringVisitor.asString(randomSelect);
+        if (DataFusionResultComparator.isOrderSensitive(query)) {
+            throw new IgnoreMeException();
+        }
+
+        SQLConnection con = state.getConnection();
+        if (defaults == null) {
+            defaults = DataFusionSessionSettings.get(con, TARGET_PARTITIONS, BATCH_SIZE);
+        }
+        String defaultBatchSize = defaults.get(BATCH_SIZE);
+        String manyPartitions = String.valueOf(Randomly.fromOptions(2, 4, 16, 33));
+        String tinyBatchSize = String.valueOf(Randomly.fromOptions(1, 2, 3, 17));
+        List<Map<String, String>> configs = new ArrayList<>();
+        configs.add(config("1", defaultBatchSize));
+        configs.add(config(manyPartitions, defaultBatchSize));
+        configs.add(config("1", tinyBatchSize));
+        configs.add(config(manyPartitions, tinyBatchSize));
+
+        try {
+            List<String> expected = null;
+            String expectedConfig = null;
+            for (Map<String, String> config : configs) {
+                String configString = DataFusionSessionSettings.set(con, config);
+                List<String> actual = DataFusionResultComparator.getSortedRows(con, query, errors);
+                if (expected == null) {
+                    expected = actual;
+                    expectedConfig = configString;
+                } else {
+                    DataFusionResultComparator.assertSameRows(expected, actual,
+                            "Parallelism oracle: results differ\n" + "Query: " + query + ";\n" + "Baseline:\n"
+                                    + expectedConfig + "Compared:\n" + configString);
+                }
+            }
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        } finally {
+            DataFusionSessionSettings.set(con, defaults);
+        }
+    }
+
+    private static Map<String, String> config(String targetPartitions, String batchSize) {
+        Map<String, String> config = new LinkedHashMap<>();
+        config.put(TARGET_PARTITIONS, targetPartitions);
+        config.put(BATCH_SIZE, batchSize);
+        return config;
+    }
+}
@@ -13,7 +13,6 @@ import sqlancer.datafusion.DataFusionErrors;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionSchema;
 import sqlancer.datafusion.DataFusionToStringVisitor;
-import sqlancer.datafusion.DataFusionUtil;
 import sqlancer.datafusion.ast.DataFusionExpression;
 import sqlancer.datafusion.ast.DataFusionSelect;
 
@@ -79,7 +78,7 @@ public class DataFusionQueryPartitioningAggrTester extends DataFusionQueryPartit
             diffQueryResultSet = ComparatorHelper.getResultSetFirstColumnAsString(diffQuery, errors, state);
         } catch (AssertionError e) {
             // Append more error message
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
             String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
             state.dfLogger.appendToLog(ERROR, newMessage);
 
@@ -107,7 +106,7 @@ public class DataFusionQueryPartitioningAggrTester extends DataFusionQueryPartit
                     .append(qp2String).append("\n").append("Q3: ").append(qp3String).append("\n").append(diffQuery)
                     .append("\n").append("=======================================\n").append("Reproducer: \n");
 
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
 
             String errorLog = errorMessage.toString() + replay + "\n";
             String indentedErrorLog = errorLog.replaceAll("(?m)^", "    ");
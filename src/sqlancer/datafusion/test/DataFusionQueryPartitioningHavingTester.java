@@ -102,7 +102,7 @@ public class DataFusionQueryPartitioningHavingTester extends DataFusionQueryPart
                     DataFusionUtil::cleanResultSetString);
         } catch (AssertionError e) {
             // Append more error message
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
             String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n" + "Query Result: "
                     + qResultSet + "\nPartitioned Query Result: " + qpResultSet + "\n";
             state.dfLogger.appendToLog(ERROR, newMessage);
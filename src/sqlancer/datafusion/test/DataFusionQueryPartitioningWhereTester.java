@@ -1,26 +1,33 @@
 package sqlancer.datafusion.test;
 
 import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
-import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.createExpr;
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.SELECT;
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExpr;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.LongStream;
 
 import sqlancer.ComparatorHelper;
 import sqlancer.IgnoreMeException;
 import sqlancer.Randomly;
+import sqlancer.Reproducer;
 import sqlancer.common.ast.newast.NewBinaryOperatorNode;
 import sqlancer.common.ast.newast.Node;
+import sqlancer.datafusion.DataFusionConnection;
 import sqlancer.datafusion.DataFusionErrors;
 import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
 import sqlancer.datafusion.DataFusionToStringVisitor;
-import sqlancer.datafusion.DataFusionUtil;
 import sqlancer.datafusion.ast.DataFusionExpression;
 import sqlancer.datafusion.ast.DataFusionSelect;
 import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
 
 public class DataFusionQueryPartitioningWhereTester extends DataFusionQueryPartitioningBase {
+    private Reproducer<DataFusionGlobalState> reproducer;
+
     public DataFusionQueryPartitioningWhereTester(DataFusionGlobalState state) {
         super(state);
         DataFusionErrors.registerExpectedExecutionErrors(errors);
@@ -41,6 +48,7 @@ public class DataFusionQueryPartitioningWhereTester extends DataFusionQueryParti
      */
     @Override
     public void check() throws SQLException {
+        reproducer = null;
         // generate a random 'SELECT [expr1] FROM [expr2] WHERE [expr3]
         super.check();
         DataFusionSelect randomSelect = select;
@@ -92,11 +100,11 @@ public class DataFusionQueryPartitioningWhereTester extends DataFusionQueryParti
             // select * from t1 where pExist AND (p IS NULL)
             Node<DataFusionExpression> pExist = gen.generatePredicate();
             Node<DataFusionExpression> p1 = new NewBinaryOperatorNode<>(pExist, predicate,
-                    createExpr(DataFusionBaseExprType.AND));
+                    getExpr(DataFusionBaseExprType.AND));
             Node<DataFusionExpression> p2 = new NewBinaryOperatorNode<>(pExist, negatedPredicate,
-                    createExpr(DataFusionBaseExprType.AND));
+                    getExpr(DataFusionBaseExprType.AND));
             Node<DataFusionExpression> p3 = new NewBinaryOperatorNode<>(pExist, isNullPredicate,
-                    createExpr(DataFusionBaseExprType.AND));
+                    getExpr(DataFusionBaseExprType.AND));
 
             randomSelect.setWhereClause(pExist);
 
@@ -118,10 +126,22 @@ public class DataFusionQueryPartitioningWhereTester extends DataFusionQueryParti
              */
             // System.out.println("DBG TLP: " + qString + "\n" + qp1String + "\n" +
             // qp2String + "\n" + qp3String);
+            if (state.getDbmsSpecificOptions().nativeFlightClient) {
+                if (!nativeResultsAreEqual(qString, qp1String, qp2String, qp3String)) {
+                    if (state.getOptions().useReducer()) {
+                        reproducer = new DataFusionTLPWhereReproducer(qString, qp1String, qp2String, qp3String);
+                    }
+                    reportNativeMismatch(qString, qp1String + " UNION ALL " + qp2String + " UNION ALL " + qp3String);
+                }
+                return;
+            }
             List<String> qResultSet = ComparatorHelper.getResultSetFirstColumnAsString(qString, errors, state);
             List<String> combinedString = new ArrayList<>();
             List<String> qpResultSet = ComparatorHelper.getCombinedResultSet(qp1String, qp2String, qp3String,
                     combinedString, true, state, errors);
+            if (state.getOptions().useReducer()) {
+                reproducer = new DataFusionTLPWhereReproducer(qString, qp1String, qp2String, qp3String);
+            }
             /*
              * Query Partitioning-Where check
              */
@@ -136,11 +156,89 @@ public class DataFusionQueryPartitioningWhereTester extends DataFusionQueryParti
             }
 
             // Append more error message
-            String replay = DataFusionUtil.getReplay(state.getDatabaseName());
+            String replay = state.getReplay();
             String newMessage = e.getMessage() + "\n" + e.getCause() + "\n" + replay + "\n";
             state.dfLogger.appendToLog(ERROR, newMessage);
 
             throw new AssertionError(newMessage);
         }
     }
+
+    @Override
+    public Reproducer<DataFusionGlobalState> getLastReproducer() {
+        return reproducer;
+    }
+
+    /*
+     * Re-runs the queries of a violation, comparing all columns (see `nativeResultsAreEqual()`). Errors mean the
+     * reduced statements don't trigger the bug
+     */
+    private static class DataFusionTLPWhereReproducer implements Reproducer<DataFusionGlobalState> {
+        private final String qString;
+        private final String qpString;
+
+        DataFusionTLPWhereReproducer(String qString, String qp1String, String qp2String, String qp3String) {
+            this.qString = qString;
+            this.qpString = qp1String + " UNION ALL " + qp2String + " UNION ALL " + qp3String;
+        }
+
+        @Override
+        public boolean bugStillTriggers(DataFusionGlobalState globalState) {
+            try {
+                List<String> qRows = DataFusionResultComparator.getSortedRows(globalState.getConnection(), qString);
+                List<String> qpRows = DataFusionResultComparator.getSortedRows(globalState.getConnection(), qpString);
+                return qRows.size() != qpRows.size() || !new HashSet<>(qRows).equals(new HashSet<>(qpRows));
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+
+    /*
+     * Same check as `ComparatorHelper.assumeResultSetsAreEqual()` (same cardinality and same set of rows), done on row
+     * hashes of all columns computed from Arrow batches (see `DataFusionFlightClient`)
+     */
+    private boolean nativeResultsAreEqual(String qString, String qp1String, String qp2String, String qp3String)
+            throws SQLException {
+        long[] qRows = getRowHashes(qString);
+        long[] qpRows = getRowHashes(qp1String + " UNION ALL " + qp2String + " UNION ALL " + qp3String);
+        if (qRows.length != qpRows.length) {
+            return false;
+        }
+        return Arrays.equals(LongStream.of(qRows).sorted().distinct().toArray(),
+                LongStream.of(qpRows).sorted().distinct().toArray());
+    }
+
+    /*
+     * Reports a mismatch of the native check with readable rows of all columns, as compared by the native check
+     *
+     * The rows read through JDBC decide: if they are the same, the row hashes differ for a reason of the harness (e.g.
+     * an Arrow type hashed differently), not of the engine, and the check is ignored.
+     */
+    private void reportNativeMismatch(String qString, String qpString) {
+        String description = "The content of the result sets mismatch (native Arrow comparison of all columns)!\n"
+                + "First query : \"" + qString + "\"\n" + "Second query: \"" + qpString + "\"";
+        List<String> qRows = DataFusionResultComparator.getSortedRows(state.getConnection(), qString, errors);
+        List<String> qpRows = DataFusionResultComparator.getSortedRows(state.getConnection(), qpString, errors);
+        DataFusionResultComparator.assertSameRows(qRows, qpRows, description);
+        if (state.getOptions().logEachSelect()) {
+            state.dfLogger.appendToLog(SELECT,
+                    "-- row hashes differ, but not the rows read through JDBC\n" + qString + ";\n" + qpString + ";");
+        }
+        throw new IgnoreMeException();
+    }
+
+    private long[] getRowHashes(String query) throws SQLException {
+        if (state.getOptions().logEachSelect()) {
+            state.getLogger().writeCurrent(query);
+        }
+        try {
+            return ((DataFusionConnection) state.getConnection()).getFlightClient().getRowHashes(query);
+        } catch (SQLException e) {
+            if (e.getMessage() != null && errors.errorIsExpected(e.getMessage())) {
+                throw new IgnoreMeException();
+            }
+            throw new AssertionError(query, e);
+        }
+    }
 }
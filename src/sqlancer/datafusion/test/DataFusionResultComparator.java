@@ -0,0 +1,120 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.cleanResultSetString;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.SQLConnection;
+import sqlancer.common.query.ExpectedErrors;
+
+/*
+ * Shared by differential oracles, which run the same query under different server configurations and expect the same
+ * result (e.g. `DataFusionSpillOracle`)
+ *
+ * Results are compared as multisets of rows, since row order without ORDER BY is not stable across physical plans.
+ * Floating point cells go through `DataFusionUtil.cleanResultSetString()`, so aggregates accumulated in a different
+ * order still compare equal.
+ */
+final class DataFusionResultComparator {
+    // Aggregates whose result depends on input order, which differs between physical plans
+    private static final List<String> ORDER_SENSITIVE_FUNCTIONS = Arrays.asList("FIRST_VALUE(", "LAST_VALUE(",
+            "APPROX_");
+    // Rows shown for each side of a mismatch
+    private static final int MAX_REPORTED_ROWS = 10;
+
+    private DataFusionResultComparator() {
+    }
+
+    static boolean isOrderSensitive(String query) {
+        return ORDER_SENSITIVE_FUNCTIONS.stream().anyMatch(query::contains);
+    }
+
+    // Rows of `query` (cells joined by ','), sorted
+    static List<String> getSortedRows(SQLConnection con, String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Statement statement = con.createStatement(); ResultSet rs = statement.executeQuery(query)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            boolean[] isFloat = new boolean[columnCount + 1];
+            for (int i = 1; i <= columnCount; i++) {
+                int type = metaData.getColumnType(i);
+                isFloat[i] = type == Types.DOUBLE || type == Types.FLOAT || type == Types.REAL;
+            }
+
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columnCount; i++) {
+                    if (i > 1) {
+                        row.append(',');
+                    }
+                    String value = rs.getString(i);
+                    row.append(isFloat[i] ? cleanResultSetString(value) : value);
+                }
+                rows.add(row.toString());
+            }
+        }
+        Collections.sort(rows);
+
+        return rows;
+    }
+
+    // Same error handling as `ComparatorHelper.getResultSetFirstColumnAsString()`
+    static List<String> getSortedRows(SQLConnection con, String query, ExpectedErrors errors) {
+        try {
+            return getSortedRows(con, query);
+        } catch (SQLException e) {
+            throw ignoreOrFail(e, query, errors);
+        }
+    }
+
+    // Expected errors skip the current check (returned, for callers to `throw`), others are bugs
+    static IgnoreMeException ignoreOrFail(SQLException e, String query, ExpectedErrors errors) {
+        if (e.getMessage() != null && errors.errorIsExpected(e.getMessage())) {
+            return new IgnoreMeException();
+        }
+        throw new AssertionError(query, e);
+    }
+
+    // `expected` and `actual` are from `getSortedRows()`
+    static void assertSameRows(List<String> expected, List<String> actual, String description) {
+        if (expected.equals(actual)) {
+            return;
+        }
+
+        // Multiset difference of two sorted lists
+        List<String> missing = new ArrayList<>();
+        List<String> unexpected = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < expected.size() || j < actual.size()) {
+            int cmp = i == expected.size() ? 1 : j == actual.size() ? -1 : expected.get(i).compareTo(actual.get(j));
+            if (cmp < 0) {
+                missing.add(expected.get(i++));
+            } else if (cmp > 0) {
+                unexpected.add(actual.get(j++));
+            } else {
+                i++;
+                j++;
+            }
+        }
+
+        throw new AssertionError(description + "\n" + "Expected " + expected.size() + " rows, got " + actual.size()
+                + "\n" + "Missing rows: " + truncate(missing) + "\n" + "Unexpected rows: " + truncate(unexpected));
+    }
+
+    private static String truncate(List<String> rows) {
+        if (rows.size() <= MAX_REPORTED_ROWS) {
+            return rows.toString();
+        }
+        return rows.subList(0, MAX_REPORTED_ROWS) + " ... (" + rows.size() + " in total)";
+    }
+}
@@ -0,0 +1,53 @@
+package sqlancer.datafusion.test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import sqlancer.SQLConnection;
+
+/*
+ * Read and change settings of the server session of current database (`SET datafusion.*`)
+ *
+ * Settings stay for the following queries of the session, so oracles changing them restore the defaults read at
+ * first use (defaults can depend on the server, e.g. `target_partitions` is its CPU count).
+ */
+final class DataFusionSessionSettings {
+
+    private DataFusionSessionSettings() {
+    }
+
+    static String get(SQLConnection con, String name) throws SQLException {
+        try (Statement statement = con.createStatement(); ResultSet rs = statement
+                .executeQuery("SELECT value FROM information_schema.df_settings WHERE name = '" + name + "'")) {
+            if (!rs.next()) {
+                throw new SQLException("Setting not found: " + name);
+            }
+            return rs.getString(1);
+        }
+    }
+
+    // name -> current value, in the same order as `names`
+    static Map<String, String> get(SQLConnection con, String... names) throws SQLException {
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String name : names) {
+            settings.put(name, get(con, name));
+        }
+        return settings;
+    }
+
+    // Returns the `SET` statements, to be included in reproducers
+    static String set(SQLConnection con, Map<String, String> settings) throws SQLException {
+        StringBuilder statements = new StringBuilder();
+        try (Statement statement = con.createStatement()) {
+            for (Map.Entry<String, String> setting : settings.entrySet()) {
+                String set = "SET " + setting.getKey() + " = " + setting.getValue();
+                statement.execute(set);
+                statements.append(set).append(";\n");
+            }
+        }
+        return statements.toString();
+    }
+}
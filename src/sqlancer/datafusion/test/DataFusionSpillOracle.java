@@ -0,0 +1,119 @@
+package sqlancer.datafusion.test;
+
+import static sqlancer.datafusion.DataFusionUtil.DataFusionLogger.DataFusionLogType.ERROR;
+import static sqlancer.datafusion.ast.DataFusionSelect.getRandomSelect;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.Randomly;
+import sqlancer.common.oracle.NoRECBase;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.datafusion.DataFusionConnection;
+import sqlancer.datafusion.DataFusionErrors;
+import sqlancer.datafusion.DataFusionProvider.DataFusionGlobalState;
+import sqlancer.datafusion.DataFusionToStringVisitor;
+import sqlancer.datafusion.ast.DataFusionSelect;
+import sqlancer.datafusion.gen.DataFusionExpressionGenerator;
+
+/*
+ * Spill differential oracle
+ *
+ * External sort and hash aggregation only spill to disk under memory pressure, which small test tables never cause.
+ * Run the same query (with ORDER BY, GROUP BY or DISTINCT):
+ * 1. On the session of current database (unlimited memory)
+ * 2. On a session sharing its tables, with a memory pool of `--spill-memory-limit` bytes (see
+ * `DataFusionConnection.getMemoryLimitedConnection()`)
+ * and check the results are the same.
+ *
+ * "Resources exhausted" on the limited session is also a bug if the query should be able to spill: an ORDER BY or a
+ * GROUP BY over a single table (hash join can't spill), without aggregates keeping all their input in memory (e.g.
+ * MEDIAN, COUNT(DISTINCT)). With `--bulk-rows`, a single loaded batch can already exceed the pool, so it's ignored.
+ *
+ * More effective with large tables, e.g. with `--bulk-rows`.
+ */
+public class DataFusionSpillOracle extends NoRECBase<DataFusionGlobalState>
+        implements TestOracle<DataFusionGlobalState> {
+
+    // Accumulators holding all input values of a group (`APPROX_MEDIAN` has a bounded state)
+    private static final Pattern NON_SPILLABLE_AGGREGATE = Pattern.compile("(?<!APPROX_)MEDIAN\\(|\\(\\s*DISTINCT\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final DataFusionGlobalState state;
+
+    public DataFusionSpillOracle(DataFusionGlobalState globalState) {
+        super(globalState);
+        this.state = globalState;
+        DataFusionErrors.registerExpectedExecutionErrors(errors);
+    }
+
+    @Override
+    public void check() throws SQLException {
+        DataFusionSelect randomSelect = getRandomSelect(state);
+        DataFusionExpressionGenerator gen = randomSelect.exprGenAll;
+
+        if (Randomly.getBoolean()) {
+            randomSelect.setAggregates(state);
+        } else if (Randomly.getBoolean()) {
+            randomSelect.distinct = true;
+        }
+        boolean isAggregate = randomSelect.distinct || !randomSelect.getGroupByExpressions().isEmpty();
+        if (!isAggregate || Randomly.getBoolean()) {
+            randomSelect.setOrderByClauses(gen.generateOrderBys());
+        }
+
+        String query = DataFusionToStringVisitor.asString(randomSelect);
+        if (DataFusionResultComparator.isOrderSensitive(query)) {
+            throw new IgnoreMeException();
+        }
+        long memoryLimit = state.getDbmsSpecificOptions().spillMemoryLimit;
+        DataFusionConnection limitedConnection = ((DataFusionConnection) state.getConnection())
+                .getMemoryLimitedConnection(memoryLimit);
+
+        try {
+            boolean spillable = state.getDbmsSpecificOptions().bulkRows == 0 && isSpillable(randomSelect, query);
+            compareResults(query, spillable, limitedConnection, memoryLimit);
+        } catch (AssertionError e) {
+            // Append detailed error message
+            String replay = state.getReplay();
+            String newMessage = e.getMessage() + "\n" + e.getCause() + "\n"
+                    + "-- Run the query again with memory limit (e.g. `datafusion-cli --memory-limit`)\n" + replay
+                    + "\n";
+            state.dfLogger.appendToLog(ERROR, newMessage);
+
+            throw new AssertionError(newMessage);
+        }
+    }
+
+    private void compareResults(String query, boolean spillable, DataFusionConnection limitedConnection,
+            long memoryLimit) {
+        List<String> expected = DataFusionResultComparator.getSortedRows(state.getConnection(), query, errors);
+        List<String> actual;
+        try {
+            actual = DataFusionResultComparator.getSortedRows(limitedConnection, query);
+        } catch (SQLException e) {
+            if (!isResourcesExhausted(e)) {
+                throw DataFusionResultComparator.ignoreOrFail(e, query, errors);
+            }
+            if (spillable) {
+                throw new AssertionError("Spillable query failed with memory limit " + memoryLimit + ": " + query, e);
+            }
+            throw new IgnoreMeException();
+        }
+
+        DataFusionResultComparator.assertSameRows(expected, actual,
+                "Spill oracle: results differ with memory limit " + memoryLimit + "\n" + "Query: " + query);
+    }
+
+    private static boolean isResourcesExhausted(SQLException e) {
+        return e.getMessage() != null && e.getMessage().contains("Resources exhausted");
+    }
+
+    private static boolean isSpillable(DataFusionSelect select, String query) {
+        boolean singleTable = !select.from.isExplicitJoin() && select.from.tableExprList.size() == 1;
+        boolean sortsOrGroups = !select.getGroupByExpressions().isEmpty() || !select.getOrderByClauses().isEmpty();
+        return singleTable && sortsOrGroups && !NON_SPILLABLE_AGGREGATE.matcher(query).find();
+    }
+}
@@ -0,0 +1,95 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.beust.jcommander.JCommander;
+
+import sqlancer.common.oracle.CompositeTestOracle;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.reducer.VirtualDB.VirtualDBConnection;
+import sqlancer.reducer.VirtualDB.VirtualDBGlobalState;
+import sqlancer.reducer.VirtualDB.VirtualDBOptions;
+
+public class TestProviderAdapter {
+
+    private static final Reproducer<VirtualDBGlobalState> REPRODUCER = state -> true;
+
+    // An oracle that always finds a bug, and always provides a reproducer for it
+    private static class ViolatingOracle implements TestOracle<VirtualDBGlobalState> {
+        @Override
+        public void check() {
+            throw new AssertionError("oracle violated");
+        }
+
+        @Override
+        public Reproducer<VirtualDBGlobalState> getLastReproducer() {
+            return REPRODUCER;
+        }
+    }
+
+    private static class ViolatingProvider extends SQLProviderAdapter<VirtualDBGlobalState, VirtualDBOptions> {
+        ViolatingProvider() {
+            super(VirtualDBGlobalState.class, VirtualDBOptions.class);
+        }
+
+        @Override
+        public SQLConnection createDatabase(VirtualDBGlobalState globalState) {
+            return new VirtualDBConnection(null);
+        }
+
+        @Override
+        public String getDBMSName() {
+            return "violating_db";
+        }
+
+        @Override
+        public void generateDatabase(VirtualDBGlobalState globalState) {
+        }
+
+        @Override
+        protected void checkViewsAreValid(VirtualDBGlobalState globalState) {
+        }
+
+        @Override
+        protected TestOracle<VirtualDBGlobalState> getTestOracle(VirtualDBGlobalState globalState) {
+            return new CompositeTestOracle<>(List.of(new ViolatingOracle()), globalState);
+        }
+    }
+
+    private static VirtualDBGlobalState createGlobalState(ViolatingProvider provider, boolean useReducer) {
+        VirtualDBGlobalState state = new VirtualDBGlobalState() {
+            private final SQLConnection con = new VirtualDBConnection(null);
+
+            @Override
+            public SQLConnection getConnection() {
+                return con;
+            }
+        };
+        MainOptions options = new MainOptions();
+        JCommander.newBuilder().addObject(options).build()
+                .parse(useReducer ? new String[] { "--use-reducer" } : new String[0]);
+        state.setMainOptions(options);
+        state.setState(provider.getStateToReproduce("violating_db"));
+        state.setManager(new Main.QueryManager<>(state));
+        return state;
+    }
+
+    @Test // without --use-reducer nothing reduces the reproducer, the violation has to fail the run
+    public void testViolationIsThrownWithoutReducer() throws Exception {
+        ViolatingProvider provider = new ViolatingProvider();
+        VirtualDBGlobalState state = createGlobalState(provider, false);
+        assertThrows(AssertionError.class, () -> provider.generateAndTestDatabase(state));
+    }
+
+    @Test
+    public void testReproducerIsReturnedWithReducer() throws Exception {
+        ViolatingProvider provider = new ViolatingProvider();
+        VirtualDBGlobalState state = createGlobalState(provider, true);
+        assertSame(REPRODUCER, provider.generateAndTestDatabase(state));
+    }
+}
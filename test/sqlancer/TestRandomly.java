@@ -10,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -223,6 +224,77 @@ public class TestRandomly {
         }
     }
 
+    @Test // a seeded Randomly reproduces the same values on the same thread, also after other instances were created
+    public void testSeedReproducible() {
+        int seed = 123;
+        List<String> values = getRandomValueList(new Randomly(seed));
+        getRandomValueList(new Randomly());
+        assertEquals(values, getRandomValueList(new Randomly(seed)));
+    }
+
+    @Test // the unsynchronized PRNG must keep producing java.util.Random's sequence, so that old seeds still reproduce
+    public void testThreadConfinedRandomMatchesRandom() {
+        for (long seed : new long[] { 0, 1, 123, -1, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            Randomly.ThreadConfinedRandom random = new Randomly.ThreadConfinedRandom(seed);
+            Random expected = new Random(seed);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(expected.nextInt(), random.nextInt());
+                assertEquals(expected.nextInt(10), random.nextInt(10));
+                assertEquals(expected.nextLong(), random.nextLong());
+                assertEquals(expected.nextDouble(), random.nextDouble());
+                assertEquals(expected.nextBoolean(), random.nextBoolean());
+            }
+            random.setSeed(seed + 1);
+            expected.setSeed(seed + 1);
+            assertEquals(expected.nextLong(), random.nextLong());
+        }
+    }
+
+    @Test // power-of-two, other, and overflowing (upper - lower < 0) ranges
+    public void testThreadConfinedRandomBoundedLong() {
+        long[][] ranges = { { 0, 1 }, { 0, 16 }, { -8, 8 }, { 0, 10 }, { -3, Long.MAX_VALUE / 3 * 2 },
+                { Long.MIN_VALUE, Long.MAX_VALUE }, { -1, Long.MAX_VALUE } };
+        for (long[] range : ranges) {
+            Randomly.ThreadConfinedRandom random = new Randomly.ThreadConfinedRandom(123);
+            Random expected = new Random(123);
+            for (int i = 0; i < 1000; i++) {
+                long val = random.nextBoundedLong(range[0], range[1]);
+                assertEquals(expected.longs(range[0], range[1]).findFirst().getAsLong(), val);
+                assertTrue(val >= range[0]);
+                assertTrue(val < range[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testPrimitiveCacheInsertionOrderAndDedup() {
+        Randomly.PrimitiveCache cache = new Randomly.PrimitiveCache();
+        assertTrue(cache.isEmpty());
+        List<Long> expected = new ArrayList<>();
+        // enough values to grow the cache several times, including ones that are equal modulo the table size
+        for (long i = 0; i < 1000; i++) {
+            long val = i % 2 == 0 ? i << 32 : -i;
+            cache.add(val);
+            cache.add(val);
+            expected.add(val);
+        }
+        cache.add(Long.MIN_VALUE);
+        cache.add(Long.MAX_VALUE);
+        expected.add(Long.MIN_VALUE);
+        expected.add(Long.MAX_VALUE);
+        for (long val : expected) {
+            cache.add(val);
+        }
+        assertFalse(cache.isEmpty());
+        assertEquals(expected.size(), cache.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), cache.get(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(expected.contains(cache.getRandom()));
+        }
+    }
+
     private List<String> getRandomValueList(Randomly r) {
         List<String> values = new ArrayList<>();
         for (int i = 0; i < 1000; i++) {
@@ -0,0 +1,174 @@
+package sqlancer.datafusion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static sqlancer.datafusion.gen.DataFusionBaseExprFactory.getExpr;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.common.ast.newast.ColumnReferenceNode;
+import sqlancer.common.ast.newast.NewBinaryOperatorNode;
+import sqlancer.common.ast.newast.NewFunctionNode;
+import sqlancer.common.ast.newast.NewUnaryPostfixOperatorNode;
+import sqlancer.common.ast.newast.NewUnaryPrefixOperatorNode;
+import sqlancer.common.ast.newast.Node;
+import sqlancer.datafusion.DataFusionExpressionEvaluator.CannotEvaluateException;
+import sqlancer.datafusion.DataFusionSchema.DataFusionColumn;
+import sqlancer.datafusion.DataFusionSchema.DataFusionDataType;
+import sqlancer.datafusion.ast.DataFusionConstant;
+import sqlancer.datafusion.ast.DataFusionConstant.DataFusionBooleanConstant;
+import sqlancer.datafusion.ast.DataFusionConstant.DataFusionDoubleConstant;
+import sqlancer.datafusion.ast.DataFusionConstant.DataFusionStringConstant;
+import sqlancer.datafusion.ast.DataFusionExpression;
+import sqlancer.datafusion.gen.DataFusionBaseExpr;
+import sqlancer.datafusion.gen.DataFusionBaseExpr.DataFusionBaseExprType;
+
+public class TestDataFusionExpressionEvaluator {
+
+    private final DataFusionColumn v0 = new DataFusionColumn("v0", DataFusionDataType.BIGINT, true);
+    private final DataFusionColumn v1 = new DataFusionColumn("v1", DataFusionDataType.DOUBLE, true);
+    private final DataFusionExpressionEvaluator evaluator = DataFusionExpressionEvaluator.ofRow(Arrays.asList(v0, v1),
+            Arrays.asList("3", null));
+
+    private static Node<DataFusionExpression> nullValue() {
+        return DataFusionConstant.createNullConstant();
+    }
+
+    private static Node<DataFusionExpression> bigint(long value) {
+        return DataFusionConstant.createIntConstant(value);
+    }
+
+    private static Node<DataFusionExpression> dbl(double value) {
+        return new DataFusionDoubleConstant(value);
+    }
+
+    private static Node<DataFusionExpression> bool(boolean value) {
+        return new DataFusionBooleanConstant(value);
+    }
+
+    private static Node<DataFusionExpression> str(String value) {
+        return new DataFusionStringConstant(value);
+    }
+
+    private static Node<DataFusionExpression> binary(DataFusionBaseExprType type, Node<DataFusionExpression> left,
+            Node<DataFusionExpression> right) {
+        return new NewBinaryOperatorNode<>(left, right, getExpr(type));
+    }
+
+    @SafeVarargs
+    private static Node<DataFusionExpression> function(DataFusionBaseExprType type,
+            Node<DataFusionExpression>... args) {
+        List<Node<DataFusionExpression>> argList = Arrays.asList(args);
+        return new NewFunctionNode<DataFusionExpression, DataFusionBaseExpr>(argList, getExpr(type));
+    }
+
+    private Object evaluate(Node<DataFusionExpression> expr) {
+        return evaluator.evaluate(expr);
+    }
+
+    @Test
+    public void testNullPropagation() {
+        assertNull(evaluate(binary(DataFusionBaseExprType.ADD, bigint(1), nullValue())));
+        assertNull(evaluate(binary(DataFusionBaseExprType.EQUAL, nullValue(), nullValue())));
+        assertNull(evaluate(binary(DataFusionBaseExprType.LESS_THAN, new ColumnReferenceNode<>(v1), dbl(1.0))));
+        assertNull(evaluate(new NewUnaryPrefixOperatorNode<>(nullValue(), getExpr(DataFusionBaseExprType.NOT))));
+        assertNull(evaluate(function(DataFusionBaseExprType.FUNC_ABS, nullValue())));
+
+        assertEquals(true, evaluate(new NewUnaryPostfixOperatorNode<>(new ColumnReferenceNode<>(v1),
+                getExpr(DataFusionBaseExprType.IS_NULL))));
+        assertEquals(false, evaluate(binary(DataFusionBaseExprType.IS_DISTINCT_FROM, nullValue(), nullValue())));
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.IS_DISTINCT_FROM, bigint(1), nullValue())));
+        assertEquals("a", evaluate(function(DataFusionBaseExprType.FUNC_COALESCE, nullValue(), str("a"))));
+    }
+
+    @Test
+    public void testThreeValuedLogic() {
+        DataFusionBaseExprType and = DataFusionBaseExprType.AND;
+        DataFusionBaseExprType or = DataFusionBaseExprType.OR;
+        assertEquals(false, evaluate(binary(and, nullValue(), bool(false))));
+        assertEquals(false, evaluate(binary(and, bool(false), nullValue())));
+        assertNull(evaluate(binary(and, nullValue(), bool(true))));
+        assertEquals(true, evaluate(binary(and, bool(true), bool(true))));
+
+        assertEquals(true, evaluate(binary(or, nullValue(), bool(true))));
+        assertEquals(true, evaluate(binary(or, bool(true), nullValue())));
+        assertNull(evaluate(binary(or, nullValue(), bool(false))));
+        assertEquals(false, evaluate(binary(or, bool(false), bool(false))));
+
+        assertEquals(0, evaluator.getTruePredicateVariant(binary(or, bool(true), nullValue())));
+        assertEquals(1, evaluator.getTruePredicateVariant(binary(and, bool(false), nullValue())));
+        assertEquals(2, evaluator.getTruePredicateVariant(binary(and, bool(true), nullValue())));
+    }
+
+    @Test
+    public void testNaNAndNegativeZeroOrdering() {
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.EQUAL, dbl(Double.NaN), dbl(Double.NaN))));
+        assertEquals(true,
+                evaluate(binary(DataFusionBaseExprType.GREATER_THAN, dbl(Double.NaN), dbl(Double.POSITIVE_INFINITY))));
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.LESS_THAN, dbl(-0.0), dbl(0.0))));
+        assertEquals(false, evaluate(binary(DataFusionBaseExprType.EQUAL, dbl(-0.0), dbl(0.0))));
+        assertEquals(true,
+                evaluate(binary(DataFusionBaseExprType.IS_NOT_DISTINCT_FROM, dbl(Double.NaN), dbl(Double.NaN))));
+    }
+
+    @Test
+    public void testBigintDoubleCoercion() {
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.EQUAL, bigint(1), dbl(1.0))));
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.LESS_THAN, new ColumnReferenceNode<>(v0), dbl(3.5))));
+        assertEquals(2.5, evaluate(binary(DataFusionBaseExprType.ADD, bigint(2), dbl(0.5))));
+        assertEquals(3L, evaluate(binary(DataFusionBaseExprType.DIVISION, bigint(7), bigint(2))));
+        assertEquals(3.5, evaluate(binary(DataFusionBaseExprType.DIVISION, bigint(7), dbl(2.0))));
+        // BIGINT and DOUBLE arguments of a conditional function are all coerced to DOUBLE
+        assertEquals(3.0, evaluate(function(DataFusionBaseExprType.FUNC_COALESCE, new ColumnReferenceNode<>(v1),
+                new ColumnReferenceNode<>(v0), dbl(1.5))));
+        // Could be BIGINT or DOUBLE, depending on the type of the NULL
+        assertThrows(CannotEvaluateException.class, () -> evaluate(function(DataFusionBaseExprType.FUNC_COALESCE,
+                new ColumnReferenceNode<>(v1), new ColumnReferenceNode<>(v0))));
+        // Other mixed types are not evaluated
+        assertThrows(CannotEvaluateException.class,
+                () -> evaluate(binary(DataFusionBaseExprType.EQUAL, bigint(1), str("1"))));
+    }
+
+    @Test
+    public void testOverflowCannotBeEvaluated() {
+        assertThrows(CannotEvaluateException.class,
+                () -> evaluate(binary(DataFusionBaseExprType.ADD, bigint(Long.MAX_VALUE), bigint(1))));
+        assertThrows(CannotEvaluateException.class,
+                () -> evaluate(binary(DataFusionBaseExprType.MULTIPLICATION, bigint(Long.MAX_VALUE), bigint(2))));
+        assertThrows(CannotEvaluateException.class,
+                () -> evaluate(binary(DataFusionBaseExprType.DIVISION, bigint(1), bigint(0))));
+        assertThrows(CannotEvaluateException.class, () -> evaluate(bigint(Long.MIN_VALUE)));
+        assertThrows(CannotEvaluateException.class, () -> evaluate(function(DataFusionBaseExprType.FUNC_ABS,
+                binary(DataFusionBaseExprType.SUB, bigint(-Long.MAX_VALUE), bigint(1)))));
+        assertEquals(Long.MAX_VALUE, evaluate(binary(DataFusionBaseExprType.SUB, bigint(Long.MAX_VALUE), bigint(0))));
+    }
+
+    @Test
+    public void testLike() {
+        DataFusionBaseExprType like = DataFusionBaseExprType.LIKE;
+        assertEquals(true, evaluate(binary(like, str("abc"), str("a%"))));
+        assertEquals(true, evaluate(binary(like, str("abc"), str("_b_"))));
+        assertEquals(false, evaluate(binary(like, str("abc"), str("_b"))));
+        assertEquals(false, evaluate(binary(like, str("ABC"), str("a%"))));
+        // Regex metacharacters in the pattern are literals
+        assertEquals(false, evaluate(binary(like, str("abc"), str("a.c"))));
+        assertEquals(true, evaluate(binary(like, str("a.c"), str("a.c"))));
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.NOT_LIKE, str("abc"), str("b%"))));
+        assertEquals(true, evaluate(binary(DataFusionBaseExprType.ILIKE, str("ABC"), str("a%"))));
+        assertNull(evaluate(binary(like, nullValue(), str("%"))));
+        assertThrows(CannotEvaluateException.class, () -> evaluate(binary(like, str("a%"), str("a\\%"))));
+    }
+
+    @Test
+    public void testColumnNotInRow() {
+        Map<DataFusionColumn, Object> row = new IdentityHashMap<>();
+        DataFusionExpressionEvaluator emptyRow = new DataFusionExpressionEvaluator(row);
+        assertThrows(CannotEvaluateException.class, () -> emptyRow.evaluate(new ColumnReferenceNode<>(v0)));
+    }
+}